@@ -19,9 +19,13 @@ package io.github.krlvm.powertunnel;
 
 import io.github.krlvm.powertunnel.adapters.ProxyFiltersSourceAdapter;
 import io.github.krlvm.powertunnel.adapters.UpstreamChainedProxyAdapter;
+import io.github.krlvm.powertunnel.filters.AggregationPolicy;
+import io.github.krlvm.powertunnel.fragmentation.FragmentationLearner;
 import io.github.krlvm.powertunnel.http.LProxyResponse;
 import io.github.krlvm.powertunnel.managers.ProxyAuthenticationManager;
 import io.github.krlvm.powertunnel.managers.UpstreamProxyChainedProxyManager;
+import io.github.krlvm.powertunnel.resolver.DNSCacheStats;
+import io.github.krlvm.powertunnel.resolver.EncryptedDNSResolver;
 import io.github.krlvm.powertunnel.resolver.LDNSResolver;
 import io.github.krlvm.powertunnel.sdk.exceptions.ProxyStartException;
 import io.github.krlvm.powertunnel.sdk.http.ProxyResponse;
@@ -36,6 +40,7 @@ import org.littleshoot.proxy.mitm.RootCertificateException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.net.ssl.SSLException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.util.Collections;
@@ -47,6 +52,7 @@ public class LittleProxyServer implements ProxyServer {
 
     private DefaultHttpProxyServer server;
     private HttpProxyServerBootstrap bootstrap;
+    private LDNSResolver resolver;
     private boolean isRunning = false;
 
     private ProxyCredentials credentials;
@@ -57,14 +63,24 @@ public class LittleProxyServer implements ProxyServer {
 
     private boolean mitmEnabled = false;
     private boolean isFullRequest = false, isFullResponse = false;
+    private final AggregationPolicy aggregationPolicy = new AggregationPolicy();
+    private final FragmentationLearner fragmentationLearner;
+    private boolean adaptiveFragmentation = false;
 
     private final List<String> dnsServers;
     private final String dnsDomainsSearchPath;
+    private String encryptedDnsServer;
 
     private boolean areHostnamesAvailable = true;
 
     protected LittleProxyServer(boolean transparent, boolean allowFallbackDnsResolver, Authority mitmAuthority,
                                 List<String> dnsServers, String dnsDomainsSearchPath) {
+        this(transparent, allowFallbackDnsResolver, mitmAuthority, dnsServers, dnsDomainsSearchPath, new FragmentationLearner());
+    }
+
+    protected LittleProxyServer(boolean transparent, boolean allowFallbackDnsResolver, Authority mitmAuthority,
+                                List<String> dnsServers, String dnsDomainsSearchPath,
+                                FragmentationLearner fragmentationLearner) {
         this.bootstrap = DefaultHttpProxyServer.bootstrap()
                 .withTransparent(transparent)
                 .withAllowRequestToOriginServer(true);
@@ -72,6 +88,7 @@ public class LittleProxyServer implements ProxyServer {
         this.mitmAuthority = mitmAuthority;
         this.dnsServers = dnsServers;
         this.dnsDomainsSearchPath = dnsDomainsSearchPath;
+        this.fragmentationLearner = fragmentationLearner;
     }
 
     /**
@@ -81,7 +98,16 @@ public class LittleProxyServer implements ProxyServer {
         ensureBootstrapAvailable();
 
         LOGGER.info("Starting LittleProxy Server...");
-        this.bootstrap.withServerResolver(new LDNSResolver(listener, this.allowFallbackResolver));
+        EncryptedDNSResolver encryptedResolver = null;
+        if(this.encryptedDnsServer != null) {
+            try {
+                encryptedResolver = new EncryptedDNSResolver(this.encryptedDnsServer);
+            } catch (SSLException ex) {
+                throw new ProxyStartException("Failed to initialize encrypted DNS resolver: " + ex.getMessage(), ex);
+            }
+        }
+        this.resolver = new LDNSResolver(listener, this.allowFallbackResolver, dnsServers, dnsDomainsSearchPath, encryptedResolver);
+        this.bootstrap.withServerResolver(this.resolver);
         if(this.upstreamProxyServer != null) {
             try {
                 this.bootstrap.withChainProxyManager(new UpstreamProxyChainedProxyManager(
@@ -99,7 +125,10 @@ public class LittleProxyServer implements ProxyServer {
             }
         }
 
-        this.bootstrap.withFiltersSource(new ProxyFiltersSourceAdapter(listener, isFullRequest, isFullResponse));
+        this.bootstrap.withFiltersSource(new ProxyFiltersSourceAdapter(
+                listener, isFullRequest, isFullResponse, aggregationPolicy,
+                adaptiveFragmentation ? fragmentationLearner : null
+        ));
 
         this.server = ((DefaultHttpProxyServer) this.bootstrap.start());
         LOGGER.info("LittleProxy Server is listening at {}", getAddress());
@@ -132,6 +161,8 @@ public class LittleProxyServer implements ProxyServer {
             this.server.abort();
         }
         this.server = null;
+        if(this.resolver != null) this.resolver.close();
+        this.resolver = null;
 
         LOGGER.info("LittleProxy Server has stopped");
     }
@@ -304,6 +335,12 @@ public class LittleProxyServer implements ProxyServer {
         return this.isFullResponse;
     }
 
+    @Override
+    public void addFullResponseRule(@Nullable HostFilter hosts, @NotNull String... contentTypes) {
+        ensureBootstrapAvailable();
+        this.aggregationPolicy.add(hosts, contentTypes);
+    }
+
     @Override
     public void setAllowRequestsToOriginServer(boolean allow) {
         ensureBootstrapAvailable();
@@ -327,6 +364,41 @@ public class LittleProxyServer implements ProxyServer {
         return mitmEnabled;
     }
 
+    @Override
+    public void setAdaptiveFragmentation(boolean enabled) {
+        ensureBootstrapAvailable();
+        adaptiveFragmentation = enabled;
+    }
+
+    @Override
+    public boolean isAdaptiveFragmentation() {
+        return adaptiveFragmentation;
+    }
+
+    /**
+     * Returns statistics of the DNS cache,
+     * if proxy server has not been started returns null
+     *
+     * @return DNS cache statistics
+     */
+    public @Nullable DNSCacheStats getDNSCacheStats() {
+        return resolver != null ? resolver.getCache().getStats() : null;
+    }
+
+    /**
+     * Removes cached resolution responses of proxy listeners
+     *
+     * @param host host or null to remove responses for all hosts
+     */
+    public void invalidateListenerResolutions(@Nullable String host) {
+        if(resolver == null) return;
+        if(host == null) {
+            resolver.getCache().clearListenerResponses();
+        } else {
+            resolver.getCache().clearListenerResponses(host);
+        }
+    }
+
     public void setHostnamesAvailability(boolean availability) {
         this.areHostnamesAvailable = availability;
     }
@@ -341,6 +413,18 @@ public class LittleProxyServer implements ProxyServer {
         return dnsDomainsSearchPath;
     }
 
+    @Override
+    public void setEncryptedDNSServer(@Nullable String uri) {
+        ensureBootstrapAvailable();
+        if(uri != null) EncryptedDNSResolver.validate(uri);
+        this.encryptedDnsServer = uri;
+    }
+
+    @Override
+    public @Nullable String getEncryptedDNSServer() {
+        return encryptedDnsServer;
+    }
+
     @Override
     public boolean areHostnamesAvailable() {
         return areHostnamesAvailable;
@@ -18,15 +18,21 @@
 package io.github.krlvm.powertunnel;
 
 import io.github.krlvm.powertunnel.configuration.ConfigurationStore;
+import io.github.krlvm.powertunnel.fragmentation.FragmentationLearner;
 import io.github.krlvm.powertunnel.listener.CoreProxyListener;
+import io.github.krlvm.powertunnel.listener.ListenerLatency;
 import io.github.krlvm.powertunnel.listener.ProxyListenerInfo;
+import io.github.krlvm.powertunnel.listener.ProxyListenerRegistry;
 import io.github.krlvm.powertunnel.listener.ServerListenerCallback;
+import io.github.krlvm.powertunnel.resolver.DNSCacheStats;
 import io.github.krlvm.powertunnel.sdk.PowerTunnelServer;
 import io.github.krlvm.powertunnel.sdk.ServerListener;
 import io.github.krlvm.powertunnel.sdk.configuration.Configuration;
 import io.github.krlvm.powertunnel.sdk.exceptions.ProxyStartException;
 import io.github.krlvm.powertunnel.sdk.plugin.PluginInfo;
 import io.github.krlvm.powertunnel.sdk.plugin.PowerTunnelPlugin;
+import io.github.krlvm.powertunnel.sdk.proxy.DispatchMode;
+import io.github.krlvm.powertunnel.sdk.proxy.HostFilter;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyAddress;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyServer;
@@ -52,6 +58,7 @@ public class PowerTunnel implements PowerTunnelServer {
     private static final Logger LOGGER = LoggerFactory.getLogger(PowerTunnel.class);
 
     private LittleProxyServer server;
+    private CoreProxyListener proxyListener;
     private ProxyStatus status = ProxyStatus.NOT_RUNNING;
     private final ProxyAddress address;
 
@@ -68,8 +75,12 @@ public class PowerTunnel implements PowerTunnelServer {
     private final Map<String, String> inheritedConfiguration;
     private final File configsDir;
 
+    private final FragmentationLearner fragmentationLearner = new FragmentationLearner();
+    private static final String FRAGMENTATION_FILE = "fragmentation.dat";
+
     private final Map<ServerListener, PluginInfo> serverListeners = new HashMap<>();
-    private final Map<ProxyListenerInfo, ProxyListener> proxyListeners = new TreeMap<>((o1, o2) -> o1.getPriority() - o2.getPriority());
+    private final ProxyListenerRegistry proxyListeners = new ProxyListenerRegistry();
+    private DispatchMode dispatchMode = DispatchMode.FULL;
     private static final int DEFAULT_LISTENER_PRIORITY = 0;
 
     public PowerTunnel(
@@ -107,7 +118,8 @@ public class PowerTunnel implements PowerTunnelServer {
     @Override
     public void start() throws ProxyStartException {
         if(this.server != null) throw new IllegalStateException("Proxy Server is already running");
-        this.server = new LittleProxyServer(transparent, allowFallbackDnsResolver, mitmAuthority, dnsServers, dnsDomainsSearchPath);
+        this.server = new LittleProxyServer(transparent, allowFallbackDnsResolver, mitmAuthority, dnsServers, dnsDomainsSearchPath,
+                fragmentationLearner);
 
         setStatus(ProxyStatus.STARTING);
         try {
@@ -116,6 +128,14 @@ public class PowerTunnel implements PowerTunnelServer {
             setStatus(ProxyStatus.NOT_RUNNING);
             throw ex;
         }
+        // plugins enable adaptive fragmentation in the initialization callback
+        if(this.server.isAdaptiveFragmentation()) {
+            try {
+                fragmentationLearner.load(new File(configsDir, FRAGMENTATION_FILE));
+            } catch (IOException ex) {
+                LOGGER.warn("Failed to load learned fragmentation levels: {}", ex.getMessage());
+            }
+        }
         try {
             this.startServer();
             setStatus(ProxyStatus.RUNNING);
@@ -138,10 +158,20 @@ public class PowerTunnel implements PowerTunnelServer {
         this.server.stop(graceful);
         setStatus(ProxyStatus.NOT_RUNNING);
 
+        if(this.server.isAdaptiveFragmentation()) {
+            try {
+                fragmentationLearner.save(new File(configsDir, FRAGMENTATION_FILE));
+            } catch (IOException ex) {
+                LOGGER.error("Failed to save learned fragmentation levels", ex);
+            }
+        }
+
         serverListeners.clear();
         proxyListeners.clear();
 
         this.server = null;
+        if(this.proxyListener != null) this.proxyListener.shutdown();
+        this.proxyListener = null;
 
         System.gc();
     }
@@ -153,7 +183,9 @@ public class PowerTunnel implements PowerTunnelServer {
             throw new ProxyStartException("Failed to resolve proxy server address", ex);
         }
         try {
-            this.server.start(new CoreProxyListener(proxyListeners));
+            this.proxyListener = new CoreProxyListener(proxyListeners);
+            this.proxyListener.setDispatchMode(dispatchMode);
+            this.server.start(proxyListener);
         } catch (RuntimeException ex) {
             if(ex.getCause() != null && ex.getCause() instanceof BindException)
                 throw new ProxyStartException("Failed to bind proxy server port", ex);
@@ -190,14 +222,42 @@ public class PowerTunnel implements PowerTunnelServer {
 
     @Override
     public void registerProxyListener(@NotNull PluginInfo pluginInfo, @NotNull ProxyListener listener, int priority) {
-        if(proxyListeners.containsValue(listener)) throw new IllegalStateException("Proxy Listener is already registered");
-        proxyListeners.put(new ProxyListenerInfo(pluginInfo, priority), listener);
+        this.registerProxyListener(pluginInfo, listener, priority, null);
+    }
+
+    @Override
+    public void registerProxyListener(@NotNull PluginInfo pluginInfo, @NotNull ProxyListener listener, int priority, @Nullable HostFilter hosts) {
+        proxyListeners.register(new ProxyListenerInfo(pluginInfo, priority, hosts), listener);
+        if(proxyListener != null) proxyListener.compile();
     }
 
     @Override
     public void unregisterProxyListener(@NotNull ProxyListener listener) {
-        if(!proxyListeners.containsValue(listener)) throw new IllegalStateException("Proxy Listener is not registered");
-        proxyListeners.values().remove(listener);
+        proxyListeners.unregister(listener);
+        if(proxyListener != null) proxyListener.compile();
+    }
+
+    @Override
+    public void setDispatchMode(@NotNull DispatchMode mode) {
+        this.dispatchMode = mode;
+        if(proxyListener != null) proxyListener.setDispatchMode(mode);
+    }
+
+    @Override
+    public @NotNull DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    @Override
+    public void invalidateProxyListenerDecisions() {
+        if(proxyListener != null) proxyListener.invalidateDecisions();
+        if(server != null) server.invalidateListenerResolutions(null);
+    }
+
+    @Override
+    public void invalidateProxyListenerDecisions(@NotNull String host) {
+        if(proxyListener != null) proxyListener.invalidateDecisions(host);
+        if(server != null) server.invalidateListenerResolutions(host);
     }
 
     // endregion
@@ -307,6 +367,26 @@ public class PowerTunnel implements PowerTunnelServer {
         return plugins;
     }
 
+    /**
+     * Returns latency statistics of the registered proxy listeners,
+     * if proxy server is not running returns an empty list
+     *
+     * @return latency statistics
+     */
+    public List<ListenerLatency> getProxyListenerLatencies() {
+        return proxyListener != null ? proxyListener.getLatencies() : Collections.emptyList();
+    }
+
+    /**
+     * Returns statistics of the DNS cache,
+     * if proxy server is not running returns null
+     *
+     * @return DNS cache statistics
+     */
+    public @Nullable DNSCacheStats getDNSCacheStats() {
+        return server != null ? server.getDNSCacheStats() : null;
+    }
+
     private void callPluginsProxyInitializationCallback() throws ProxyStartException {
         for (PowerTunnelPlugin plugin : plugins) {
             try {
@@ -17,7 +17,9 @@
 
 package io.github.krlvm.powertunnel.adapters;
 
+import io.github.krlvm.powertunnel.filters.AggregationPolicy;
 import io.github.krlvm.powertunnel.filters.ProxyFilter;
+import io.github.krlvm.powertunnel.fragmentation.FragmentationLearner;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpRequest;
@@ -28,21 +30,37 @@ public class ProxyFiltersSourceAdapter extends HttpFiltersSourceAdapter {
 
     private final ProxyListener listener;
     private final boolean isFullRequest, isFullResponse;
+    // null if all responses have to be aggregated
+    private final AggregationPolicy aggregationPolicy;
+    // null if fragmentation is not learned
+    private final FragmentationLearner fragmentationLearner;
 
     public ProxyFiltersSourceAdapter(ProxyListener listener, boolean isFullRequest, boolean isFullResponse) {
+        this(listener, isFullRequest, isFullResponse, null);
+    }
+
+    public ProxyFiltersSourceAdapter(ProxyListener listener, boolean isFullRequest, boolean isFullResponse,
+                                     AggregationPolicy aggregationPolicy) {
+        this(listener, isFullRequest, isFullResponse, aggregationPolicy, null);
+    }
+
+    public ProxyFiltersSourceAdapter(ProxyListener listener, boolean isFullRequest, boolean isFullResponse,
+                                     AggregationPolicy aggregationPolicy, FragmentationLearner fragmentationLearner) {
         this.listener = listener;
         this.isFullRequest = isFullRequest;
-        this.isFullResponse = isFullResponse;
+        this.isFullResponse = isFullResponse || (aggregationPolicy != null && !aggregationPolicy.isEmpty());
+        this.aggregationPolicy = isFullResponse ? null : aggregationPolicy;
+        this.fragmentationLearner = fragmentationLearner;
     }
 
     @Override
     public HttpFilters filterRequest(HttpRequest originalRequest) {
-        return new ProxyFilter(this.listener, originalRequest);
+        return new ProxyFilter(this.listener, originalRequest, null, this.aggregationPolicy, this.fragmentationLearner);
     }
 
     @Override
     public HttpFilters filterRequest(HttpRequest originalRequest, ChannelHandlerContext ctx) {
-        return new ProxyFilter(this.listener, originalRequest/*, ctx*/);
+        return new ProxyFilter(this.listener, originalRequest/*, ctx*/, null, this.aggregationPolicy, this.fragmentationLearner);
     }
 
     @Override
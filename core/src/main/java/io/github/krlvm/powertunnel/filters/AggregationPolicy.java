@@ -0,0 +1,94 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.filters;
+
+import io.github.krlvm.powertunnel.sdk.proxy.HostFilter;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Rules deciding which responses have to be aggregated,
+ * responses that are not matched by any rule are streamed
+ */
+public class AggregationPolicy {
+
+    private final List<Rule> rules = new ArrayList<>();
+
+    /**
+     * Adds a rule
+     *
+     * @param hosts hosts or null to match all hosts
+     * @param contentTypes content types or none to match all content types
+     */
+    public void add(HostFilter hosts, String... contentTypes) {
+        final String[] types = new String[contentTypes.length];
+        for (int i = 0; i < contentTypes.length; i++) {
+            final String type = mediaType(contentTypes[i]);
+            if (type.isEmpty()) throw new IllegalArgumentException("Invalid content type: '" + contentTypes[i] + "'");
+            types[i] = type;
+        }
+        rules.add(new Rule(hosts, types));
+    }
+
+    public boolean isEmpty() {
+        return rules.isEmpty();
+    }
+
+    /**
+     * Returns whether the response has to be aggregated
+     *
+     * @param host response host
+     * @param contentType value of the Content-Type header
+     * @return whether the response has to be aggregated
+     */
+    public boolean matches(String host, String contentType) {
+        final String type = contentType == null ? null : mediaType(contentType);
+        for (Rule rule : rules) {
+            if (rule.matches(host, type)) return true;
+        }
+        return false;
+    }
+
+    private static String mediaType(String contentType) {
+        final int semicolon = contentType.indexOf(';');
+        return (semicolon < 0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static class Rule {
+
+        private final HostFilter hosts;
+        private final String[] types;
+
+        private Rule(HostFilter hosts, String[] types) {
+            this.hosts = hosts;
+            this.types = types;
+        }
+
+        private boolean matches(String host, String type) {
+            if (hosts != null && !hosts.matches(host)) return false;
+            if (types.length == 0) return true;
+            if (type == null) return false;
+            for (String t : types) {
+                if (t.endsWith("/*") ? type.startsWith(t.substring(0, t.length() - 1)) : type.equals(t)) return true;
+            }
+            return false;
+        }
+    }
+}
@@ -17,28 +17,75 @@
 
 package io.github.krlvm.powertunnel.filters;
 
+import io.github.krlvm.powertunnel.http.LProxyChunk;
 import io.github.krlvm.powertunnel.http.LProxyRequest;
 import io.github.krlvm.powertunnel.http.LProxyResponse;
+import io.github.krlvm.powertunnel.sdk.proxy.AsyncProxyListener;
+import io.github.krlvm.powertunnel.sdk.proxy.Fragmentation;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
 import io.github.krlvm.powertunnel.sdk.types.FullAddress;
+import io.github.krlvm.powertunnel.fragmentation.ClientHello;
+import io.github.krlvm.powertunnel.fragmentation.FragmentationLearner;
+import io.github.krlvm.powertunnel.fragmentation.FragmentationStrategy;
+import io.github.krlvm.powertunnel.fragmentation.HttpRequestHead;
+import io.github.krlvm.powertunnel.listener.HostMatch;
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpMessage;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 import org.littleshoot.proxy.HttpFiltersAdapter;
 
+import java.util.List;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
 public class ProxyFilter extends HttpFiltersAdapter {
 
     private final ProxyListener listener;
+    private final AggregationPolicy aggregationPolicy;
+    private final FragmentationLearner fragmentationLearner;
     private FullAddress address;
 
+    // fragmentation level chosen by the learner, -1 if the fragmentation was not learned
+    private volatile int learnedLevel = -1;
+    private volatile boolean learnedTls;
+    // delay of the fragmentation resolved by fragmentRaw, which is always called first
+    private volatile long fragmentationDelayNanos;
+
+    // parsers of the first packet, created once per filter
+    private ClientHello clientHello;
+    private HttpRequestHead requestHead;
+
+    // wrappers are reused through all the phases of the exchange
+    private LProxyRequest request;
+    private LProxyResponse response;
+    private LProxyChunk chunk;
+    // listeners subscribed to the host are matched once per connection
+    private final HostMatch hostMatch = new HostMatch();
+
     public ProxyFilter(ProxyListener listener, HttpRequest originalRequest) {
         this(listener, originalRequest, null);
     }
 
     public ProxyFilter(ProxyListener listener, HttpRequest originalRequest, ChannelHandlerContext ctx) {
+        this(listener, originalRequest, ctx, null);
+    }
+
+    public ProxyFilter(ProxyListener listener, HttpRequest originalRequest, ChannelHandlerContext ctx,
+                       AggregationPolicy aggregationPolicy) {
+        this(listener, originalRequest, ctx, aggregationPolicy, null);
+    }
+
+    public ProxyFilter(ProxyListener listener, HttpRequest originalRequest, ChannelHandlerContext ctx,
+                       AggregationPolicy aggregationPolicy, FragmentationLearner fragmentationLearner) {
         super(originalRequest, ctx);
         this.listener = listener;
+        this.aggregationPolicy = aggregationPolicy;
+        this.fragmentationLearner = fragmentationLearner;
     }
 
     @Override
@@ -49,35 +96,130 @@ public class ProxyFilter extends HttpFiltersAdapter {
     @Override
     public HttpResponse clientToProxyRequest(HttpObject httpObject) {
         if(!(httpObject instanceof HttpRequest)) return null;
-        LProxyRequest req = new LProxyRequest(((HttpRequest) httpObject), address);
+        LProxyRequest req = wrap((HttpRequest) httpObject);
         listener.onClientToProxyRequest(req);
         return req.getLittleProxyResponse();
     }
 
+    @Override
+    public CompletionStage<HttpResponse> clientToProxyRequestAsync(HttpObject httpObject) {
+        if(!(httpObject instanceof HttpRequest) || !(listener instanceof AsyncProxyListener)) return null;
+        LProxyRequest req = wrap((HttpRequest) httpObject);
+        CompletionStage<Void> stage = ((AsyncProxyListener) listener).onClientToProxyRequestAsync(req);
+        return stage == null ? null : stage.thenApply(v -> req.getLittleProxyResponse());
+    }
+
     @Override
     public HttpResponse proxyToServerRequest(HttpObject httpObject) {
         if(!(httpObject instanceof HttpRequest)) return null;
-        LProxyRequest req = new LProxyRequest(((HttpRequest) httpObject), address);
+        LProxyRequest req = wrap((HttpRequest) httpObject);
         listener.onProxyToServerRequest(req);
         return req.getLittleProxyResponse();
     }
 
+    @Override
+    public HttpContent proxyToServerRequestChunk(HttpContent httpContent) {
+        if(httpContent instanceof HttpMessage) return httpContent;
+        LProxyChunk chk = wrap(httpContent);
+        listener.onRequestChunk(chk);
+        return chk.getLittleProxyObject();
+    }
+
     @Override
     public HttpObject serverToProxyResponse(HttpObject httpObject) {
+        if(httpObject instanceof HttpContent && !(httpObject instanceof HttpMessage)) {
+            LProxyChunk chk = wrap((HttpContent) httpObject);
+            listener.onResponseChunk(chk);
+            return chk.getLittleProxyObject();
+        }
         if(!(httpObject instanceof HttpResponse)) return httpObject;
-        LProxyResponse res = new LProxyResponse(((HttpResponse) httpObject), address);
+        LProxyResponse res = wrap((HttpResponse) httpObject);
         listener.onServerToProxyResponse(res);
         return res.getLittleProxyObject();
     }
 
+    @Override
+    public boolean shouldAggregateResponse(HttpResponse response) {
+        if(aggregationPolicy == null) return true;
+        final String host = address != null ? address.getHost() : originalRequest.headers().get(HttpHeaderNames.HOST);
+        return aggregationPolicy.matches(host, response.headers().get(HttpHeaderNames.CONTENT_TYPE));
+    }
+
     @Override
     public HttpObject proxyToClientResponse(HttpObject httpObject) {
         if(!(httpObject instanceof HttpResponse)) return httpObject;
-        LProxyResponse res = new LProxyResponse(((HttpResponse) httpObject), address);
+        LProxyResponse res = wrap((HttpResponse) httpObject);
         listener.onProxyToClientResponse(res);
         return res.getLittleProxyObject();
     }
 
+    private LProxyRequest wrap(HttpRequest httpRequest) {
+        if(request == null) {
+            request = new LProxyRequest(httpRequest, address);
+            request.setHostMatch(hostMatch);
+        } else {
+            request.bind(httpRequest);
+        }
+        return request;
+    }
+
+    private LProxyResponse wrap(HttpResponse httpResponse) {
+        if(response == null) {
+            response = new LProxyResponse(httpResponse, address);
+            response.setHostMatch(hostMatch);
+        } else {
+            response.bind(httpResponse);
+        }
+        return response;
+    }
+
+    private LProxyChunk wrap(HttpContent httpContent) {
+        if(chunk == null) {
+            chunk = new LProxyChunk(httpContent, address);
+            chunk.setHostMatch(hostMatch);
+        } else {
+            chunk.bind(httpContent);
+        }
+        return chunk;
+    }
+
+    @Override
+    public List<ByteBuf> fragmentRaw(ByteBuf buf) {
+        fragmentationDelayNanos = 0;
+        Fragmentation fragmentation = listener.onGetFragmentation(address);
+        // the learner is consulted only when no listener has decided how to split the packet
+        if(fragmentation == null && (fragmentationLearner == null || address == null || listener.onGetChunkSize(address) > 0)) {
+            return null;
+        }
+        if(clientHello == null) clientHello = new ClientHello();
+        final boolean tls = clientHello.parse(buf);
+        if(fragmentation == null) {
+            learnedTls = tls;
+            learnedLevel = fragmentationLearner.getLevel(address.getHost(), tls);
+            fragmentation = FragmentationLearner.getFragmentation(learnedLevel, tls);
+        }
+        fragmentationDelayNanos = fragmentation.getDelay(TimeUnit.NANOSECONDS);
+        final int[] splits;
+        if(tls) {
+            splits = clientHello.resolve(fragmentation, buf.readableBytes());
+        } else {
+            if(requestHead == null) requestHead = new HttpRequestHead();
+            requestHead.parse(buf);
+            splits = requestHead.resolve(fragmentation, buf.readableBytes());
+        }
+        return FragmentationStrategy.of(fragmentation.getStrategy()).fragment(buf, clientHello, splits);
+    }
+
+    @Override
+    public long fragmentationDelayNanos() {
+        return fragmentationDelayNanos;
+    }
+
+    @Override
+    public void serverToProxyFirstAnswer(boolean answered) {
+        if(learnedLevel >= 0) fragmentationLearner.report(address.getHost(), learnedTls, learnedLevel, answered);
+    }
+
     @Override
     public int chunkSize() {
         return listener.onGetChunkSize(address);
@@ -0,0 +1,181 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.fragmentation;
+
+import io.github.krlvm.powertunnel.sdk.proxy.Fragmentation;
+import io.github.krlvm.powertunnel.sdk.proxy.SplitPoint;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Locator of the fields of a TLS ClientHello the first packet can be split at
+ *
+ * The packet is read in place, offsets are relative to the reader index of the buffer
+ * and only the first TLS record is inspected,
+ * the locator can be reused for several packets but not shared between threads
+ */
+public class ClientHello {
+
+    private static final int RECORD_HEADER_LENGTH = 5;
+    private static final int HANDSHAKE_HEADER_LENGTH = 4;
+    private static final int CONTENT_TYPE_HANDSHAKE = 0x16;
+    private static final int HANDSHAKE_TYPE_CLIENT_HELLO = 0x01;
+    private static final int EXTENSION_SERVER_NAME = 0x0000;
+    private static final int NAME_TYPE_HOST_NAME = 0x00;
+
+    private int recordLength = -1;
+    private boolean recordComplete = false;
+    private int extensionsOffset = -1;
+    private int sniOffset = -1, sniLength = -1;
+
+    private final SplitOffsets offsets = new SplitOffsets(8);
+
+    /**
+     * Parses the packet
+     *
+     * @param buf packet
+     * @return whether the packet starts with a TLS ClientHello
+     */
+    public boolean parse(ByteBuf buf) {
+        recordLength = extensionsOffset = sniOffset = sniLength = -1;
+        recordComplete = false;
+
+        final int base = buf.readerIndex();
+        final int length = buf.readableBytes();
+        if (length < RECORD_HEADER_LENGTH + HANDSHAKE_HEADER_LENGTH) return false;
+        if (buf.getUnsignedByte(base) != CONTENT_TYPE_HANDSHAKE || buf.getUnsignedByte(base + 1) != 3) return false;
+        if (buf.getUnsignedByte(base + RECORD_HEADER_LENGTH) != HANDSHAKE_TYPE_CLIENT_HELLO) return false;
+        recordLength = buf.getUnsignedShort(base + 3);
+
+        // fields of a ClientHello split into several records can't be located,
+        // a large ClientHello can also be split across several reads
+        recordComplete = length >= RECORD_HEADER_LENGTH + recordLength;
+        final int end = recordComplete ? RECORD_HEADER_LENGTH + recordLength : length;
+
+        // client version and random
+        int i = RECORD_HEADER_LENGTH + HANDSHAKE_HEADER_LENGTH + 2 + 32;
+        // session id
+        if (i + 1 > end) return true;
+        i += 1 + buf.getUnsignedByte(base + i);
+        // cipher suites
+        if (i + 2 > end) return true;
+        i += 2 + buf.getUnsignedShort(base + i);
+        // compression methods
+        if (i + 1 > end) return true;
+        i += 1 + buf.getUnsignedByte(base + i);
+        if (i + 2 > end) return true;
+        extensionsOffset = i;
+
+        final int extensionsEnd = Math.min(end, i + 2 + buf.getUnsignedShort(base + i));
+        i += 2;
+        while (i + 4 <= extensionsEnd) {
+            final int type = buf.getUnsignedShort(base + i);
+            final int extensionLength = buf.getUnsignedShort(base + i + 2);
+            i += 4;
+            if (type == EXTENSION_SERVER_NAME) {
+                // server name list length, name type, name length
+                if (i + 5 <= extensionsEnd && buf.getUnsignedByte(base + i + 2) == NAME_TYPE_HOST_NAME) {
+                    final int nameLength = buf.getUnsignedShort(base + i + 3);
+                    if (i + 5 + nameLength <= extensionsEnd) {
+                        sniOffset = i + 5;
+                        sniLength = nameLength;
+                    }
+                }
+                break;
+            }
+            i += extensionLength;
+        }
+        return true;
+    }
+
+    /**
+     * Returns length of the first TLS record payload
+     * or -1 if the packet is not a ClientHello
+     *
+     * @return record length
+     */
+    public int getRecordLength() {
+        return recordLength;
+    }
+
+    /**
+     * Returns whether the packet contains the whole first TLS record,
+     * only a complete record can be re-framed into several records
+     *
+     * @return whether the first record is complete
+     */
+    public boolean isRecordComplete() {
+        return recordComplete;
+    }
+
+    /**
+     * Returns offset of the extensions block
+     * or -1 if it is not located
+     *
+     * @return extensions offset
+     */
+    public int getExtensionsOffset() {
+        return extensionsOffset;
+    }
+
+    /**
+     * Returns offset of the SNI hostname
+     * or -1 if it is not located
+     *
+     * @return SNI hostname offset
+     */
+    public int getSniOffset() {
+        return sniOffset;
+    }
+
+    public int getSniLength() {
+        return sniLength;
+    }
+
+    /**
+     * Resolves split points of the fragmentation against the parsed packet
+     *
+     * @param fragmentation fragmentation
+     * @param length packet length
+     * @return sorted distinct split offsets inside the packet
+     */
+    public int[] resolve(Fragmentation fragmentation, int length) {
+        offsets.clear();
+        for (SplitPoint point : fragmentation.getSplitPoints()) {
+            switch (point.getKind()) {
+                case OFFSET:
+                    offsets.add(point.getValue());
+                    break;
+                case BEFORE_EXTENSIONS:
+                    if (extensionsOffset >= 0) offsets.add(extensionsOffset);
+                    break;
+                case SNI_OFFSET:
+                    if (sniLength > 0) offsets.add(sniOffset + SplitOffsets.clamp(point.getValue(), sniLength));
+                    break;
+                case SNI_MIDDLE:
+                    if (sniLength > 0) offsets.add(sniOffset + sniLength / 2);
+                    break;
+                case SNI_EVERY:
+                    for (int offset = point.getValue(); offset < sniLength; offset += point.getValue()) {
+                        offsets.add(sniOffset + offset);
+                    }
+                    break;
+            }
+        }
+        return offsets.toArray(length);
+    }
+}
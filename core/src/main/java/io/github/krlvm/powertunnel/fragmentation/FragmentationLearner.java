@@ -0,0 +1,214 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.fragmentation;
+
+import io.github.krlvm.powertunnel.sdk.proxy.Fragmentation;
+import io.github.krlvm.powertunnel.sdk.proxy.Fragmentation.Strategy;
+import io.github.krlvm.powertunnel.sdk.proxy.SplitPoint;
+
+import java.io.*;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Learns the cheapest fragmentation that works for each host
+ *
+ * Every host starts without fragmentation and moves to the next, more expensive, level
+ * after several consecutive connections to which the server did not answer.
+ * A day after the last change the previous level is tried again,
+ * so hosts that are no longer blocked return to cheaper levels.
+ */
+public class FragmentationLearner {
+
+    private static final Fragmentation[] TLS_LEVELS = {
+            Fragmentation.none(),
+            // one TCP segment, the cheapest split
+            Fragmentation.of(Strategy.TLS_RECORDS, SplitPoint.sniMiddle()),
+            Fragmentation.of(Strategy.TCP_SEGMENTS, SplitPoint.sniMiddle()),
+            Fragmentation.of(Strategy.TLS_RECORDS_AND_TCP_SEGMENTS, SplitPoint.beforeExtensions(), SplitPoint.sniMiddle()),
+            Fragmentation.of(Strategy.TCP_SEGMENTS, SplitPoint.beforeExtensions(), SplitPoint.sniEvery(2))
+    };
+    // plain HTTP requests can only be split into TCP segments
+    private static final Fragmentation[] HTTP_LEVELS = {
+            Fragmentation.none(),
+            Fragmentation.of(Strategy.TCP_SEGMENTS, SplitPoint.hostMiddle()),
+            Fragmentation.of(Strategy.TCP_SEGMENTS, SplitPoint.afterMethod(), SplitPoint.hostMiddle()),
+            Fragmentation.of(Strategy.TCP_SEGMENTS,
+                    SplitPoint.afterMethod(), SplitPoint.beforeHostHeader(), SplitPoint.hostMiddle())
+    };
+    // levels of plain HTTP hosts are stored under prefixed keys
+    private static final String HTTP_KEY_PREFIX = "http://";
+
+    private static final int FAILURES_TO_ESCALATE = 2;
+    private static final long PROBE_INTERVAL = TimeUnit.DAYS.toMillis(1);
+    private static final int MAX_HOSTS = 8192;
+
+    private static final int FILE_MAGIC = 0x50544652; // PTFR
+    private static final int FILE_VERSION = 1;
+
+    private final Map<String, HostState> hosts = new LinkedHashMap<String, HostState>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, HostState> eldest) {
+            return size() > MAX_HOSTS;
+        }
+    };
+
+    /**
+     * Returns level of fragmentation to use for the host,
+     * TLS and plain HTTP connections are learned separately
+     *
+     * @param host host
+     * @param tls whether the first packet is a TLS ClientHello
+     * @return fragmentation level
+     */
+    public synchronized int getLevel(String host, boolean tls) {
+        final HostState state = hosts.get(key(host, tls));
+        if (state == null) return 0;
+        if (state.level > 0 && System.currentTimeMillis() - state.changedAt > PROBE_INTERVAL) return state.level - 1;
+        return state.level;
+    }
+
+    /**
+     * Returns fragmentation of the level
+     *
+     * @param level level returned by {@link #getLevel(String, boolean)}
+     * @param tls whether the first packet is a TLS ClientHello
+     * @return fragmentation
+     */
+    public static Fragmentation getFragmentation(int level, boolean tls) {
+        return levels(tls)[level];
+    }
+
+    /**
+     * Records outcome of a connection that used the given fragmentation level
+     *
+     * @param host host
+     * @param tls whether the first packet was a TLS ClientHello
+     * @param level fragmentation level used for the connection
+     * @param answered whether the server answered to the first packet
+     */
+    public synchronized void report(String host, boolean tls, int level, boolean answered) {
+        host = key(host, tls);
+        HostState state = hosts.get(host);
+        if (state == null) {
+            if (answered) return;
+            hosts.put(host, state = new HostState());
+        }
+
+        final long now = System.currentTimeMillis();
+        if (level < state.level) {
+            // previous level has been probed
+            if (answered) state.level = (byte) level;
+            state.failures = 0;
+            state.changedAt = now;
+        } else if (level == state.level) {
+            if (answered) {
+                state.failures = 0;
+                if (state.level == 0) hosts.remove(host);
+            } else if (++state.failures >= FAILURES_TO_ESCALATE && state.level < levels(tls).length - 1) {
+                state.level++;
+                state.failures = 0;
+                state.changedAt = now;
+            }
+        }
+    }
+
+    /**
+     * Replaces learned levels with ones stored in the file
+     *
+     * @param file file
+     * @throws IOException if an I/O error occurs
+     */
+    public void load(File file) throws IOException {
+        if (!file.exists()) return;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != FILE_MAGIC || in.readUnsignedByte() != FILE_VERSION) {
+                throw new IOException("Unsupported file format");
+            }
+            final int count = in.readInt();
+            final Map<String, HostState> loaded = new LinkedHashMap<>();
+            for (int i = 0; i < count; i++) {
+                final String host = in.readUTF();
+                final HostState state = new HostState();
+                state.level = (byte) Math.min(in.readUnsignedByte(), levels(!host.startsWith(HTTP_KEY_PREFIX)).length - 1);
+                state.changedAt = in.readLong();
+                loaded.put(host, state);
+            }
+            synchronized (this) {
+                hosts.clear();
+                hosts.putAll(loaded);
+            }
+        }
+    }
+
+    /**
+     * Stores learned levels to the file
+     *
+     * @param file file
+     * @throws IOException if an I/O error occurs
+     */
+    public void save(File file) throws IOException {
+        final Map<String, HostState> snapshot = new LinkedHashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, HostState> entry : hosts.entrySet()) {
+                if (entry.getValue().level > 0) snapshot.put(entry.getKey(), entry.getValue().copy());
+            }
+        }
+
+        final File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeByte(FILE_VERSION);
+            out.writeInt(snapshot.size());
+            for (Map.Entry<String, HostState> entry : snapshot.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeByte(entry.getValue().level);
+                out.writeLong(entry.getValue().changedAt);
+            }
+        }
+        if (file.exists() && !file.delete() || !temp.renameTo(file)) {
+            throw new IOException("Failed to replace '" + file + "'");
+        }
+    }
+
+    private static Fragmentation[] levels(boolean tls) {
+        return tls ? TLS_LEVELS : HTTP_LEVELS;
+    }
+
+    private static String key(String host, boolean tls) {
+        host = host.toLowerCase(Locale.ROOT);
+        if (host.endsWith(".")) host = host.substring(0, host.length() - 1);
+        return tls ? host : HTTP_KEY_PREFIX + host;
+    }
+
+    private static class HostState {
+
+        private byte level;
+        private byte failures;
+        private long changedAt;
+
+        private HostState copy() {
+            final HostState state = new HostState();
+            state.level = level;
+            state.changedAt = changedAt;
+            return state;
+        }
+    }
+}
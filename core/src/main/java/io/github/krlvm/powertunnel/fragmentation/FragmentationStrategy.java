@@ -0,0 +1,48 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.fragmentation;
+
+import io.github.krlvm.powertunnel.sdk.proxy.Fragmentation;
+import io.netty.buffer.ByteBuf;
+
+import java.util.List;
+
+/**
+ * Strategy of the first packet fragmentation
+ */
+public interface FragmentationStrategy {
+
+    /**
+     * Splits the packet into fragments sent in separate TCP segments
+     *
+     * @param buf packet, it is neither modified nor released
+     * @param hello parsed ClientHello of the packet
+     * @param splits sorted split offsets relative to the reader index of the packet
+     * @return fragments holding their own references to the packet memory,
+     *         or empty list to send the packet as is
+     */
+    List<ByteBuf> fragment(ByteBuf buf, ClientHello hello, int[] splits);
+
+    static FragmentationStrategy of(Fragmentation.Strategy strategy) {
+        switch (strategy) {
+            case TLS_RECORDS: return TlsRecordStrategy.SINGLE_SEGMENT;
+            case TLS_RECORDS_AND_TCP_SEGMENTS: return TlsRecordStrategy.SEPARATE_SEGMENTS;
+            default: return TcpSegmentStrategy.INSTANCE;
+        }
+    }
+}
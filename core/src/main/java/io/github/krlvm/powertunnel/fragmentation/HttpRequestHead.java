@@ -0,0 +1,149 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.fragmentation;
+
+import io.github.krlvm.powertunnel.sdk.proxy.Fragmentation;
+import io.github.krlvm.powertunnel.sdk.proxy.SplitPoint;
+import io.netty.buffer.ByteBuf;
+
+/**
+ * Locator of the fields of an encoded HTTP request head the packet can be split at
+ *
+ * The packet is read in place, offsets are relative to the reader index of the buffer,
+ * the locator can be reused for several packets but not shared between threads
+ */
+public class HttpRequestHead {
+
+    private static final int MAX_METHOD_LENGTH = 16;
+
+    private int methodEnd = -1;
+    private int hostHeaderOffset = -1;
+    private int hostOffset = -1, hostLength = -1;
+
+    private final SplitOffsets offsets = new SplitOffsets(8);
+
+    /**
+     * Parses the packet
+     *
+     * @param buf packet
+     * @return whether the packet starts with an HTTP request line
+     */
+    public boolean parse(ByteBuf buf) {
+        methodEnd = hostHeaderOffset = hostOffset = hostLength = -1;
+
+        final int base = buf.readerIndex();
+        final int length = buf.readableBytes();
+
+        int i = 0;
+        while (i < length && i <= MAX_METHOD_LENGTH) {
+            final byte b = buf.getByte(base + i);
+            if (b == ' ') break;
+            if (b < 'A' || b > 'Z') return false;
+            i++;
+        }
+        if (i == 0 || i >= length || buf.getByte(base + i) != ' ') return false;
+        methodEnd = i;
+
+        // header lines, the head ends with an empty line
+        int line = indexOfLineEnd(buf, base, i, length);
+        while (line >= 0 && line + 2 < length) {
+            final int start = line + 2;
+            if (buf.getByte(base + start) == '\r') break;
+            if (isHostHeader(buf, base + start, length - start)) {
+                hostHeaderOffset = start;
+                int value = start + 5;
+                while (value < length && (buf.getByte(base + value) == ' ' || buf.getByte(base + value) == '\t')) value++;
+                final int end = indexOfLineEnd(buf, base, value, length);
+                if (end > value) {
+                    hostOffset = value;
+                    hostLength = end - value;
+                }
+                break;
+            }
+            line = indexOfLineEnd(buf, base, start, length);
+        }
+        return true;
+    }
+
+    private static int indexOfLineEnd(ByteBuf buf, int base, int from, int length) {
+        final int index = buf.indexOf(base + from, base + length, (byte) '\r');
+        return index < 0 ? -1 : index - base;
+    }
+
+    private static boolean isHostHeader(ByteBuf buf, int index, int remaining) {
+        return remaining >= 5
+                && (buf.getByte(index) | 0x20) == 'h'
+                && (buf.getByte(index + 1) | 0x20) == 'o'
+                && (buf.getByte(index + 2) | 0x20) == 's'
+                && (buf.getByte(index + 3) | 0x20) == 't'
+                && buf.getByte(index + 4) == ':';
+    }
+
+    /**
+     * Returns length of the request method
+     * or -1 if the packet is not an HTTP request
+     *
+     * @return method length
+     */
+    public int getMethodEnd() {
+        return methodEnd;
+    }
+
+    public int getHostHeaderOffset() {
+        return hostHeaderOffset;
+    }
+
+    public int getHostOffset() {
+        return hostOffset;
+    }
+
+    public int getHostLength() {
+        return hostLength;
+    }
+
+    /**
+     * Resolves split points of the fragmentation against the parsed packet
+     *
+     * @param fragmentation fragmentation
+     * @param length packet length
+     * @return sorted distinct split offsets inside the packet
+     */
+    public int[] resolve(Fragmentation fragmentation, int length) {
+        offsets.clear();
+        for (SplitPoint point : fragmentation.getSplitPoints()) {
+            switch (point.getKind()) {
+                case OFFSET:
+                    offsets.add(point.getValue());
+                    break;
+                case AFTER_METHOD:
+                    if (methodEnd > 0) offsets.add(methodEnd);
+                    break;
+                case BEFORE_HOST_HEADER:
+                    if (hostHeaderOffset > 0) offsets.add(hostHeaderOffset);
+                    break;
+                case HOST_OFFSET:
+                    if (hostLength > 0) offsets.add(hostOffset + SplitOffsets.clamp(point.getValue(), hostLength));
+                    break;
+                case HOST_MIDDLE:
+                    if (hostLength > 0) offsets.add(hostOffset + hostLength / 2);
+                    break;
+            }
+        }
+        return offsets.toArray(length);
+    }
+}
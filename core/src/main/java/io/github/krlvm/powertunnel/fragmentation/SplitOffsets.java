@@ -0,0 +1,68 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.fragmentation;
+
+import java.util.Arrays;
+
+/**
+ * Accumulator of split offsets resolved from split points,
+ * it is reused by the parser owning it
+ */
+class SplitOffsets {
+
+    private int[] offsets;
+    private int count;
+
+    SplitOffsets(int capacity) {
+        this.offsets = new int[Math.max(4, capacity)];
+    }
+
+    void clear() {
+        count = 0;
+    }
+
+    void add(int offset) {
+        if (count == offsets.length) offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        offsets[count++] = offset;
+    }
+
+    /**
+     * Returns offset inside a field, negative offsets are counted from the end of the field
+     */
+    static int clamp(int offset, int length) {
+        return Math.max(0, Math.min(length, offset >= 0 ? offset : length + offset));
+    }
+
+    /**
+     * Returns sorted offsets without duplicates
+     * and offsets that are out of the packet
+     *
+     * @param length packet length
+     * @return split offsets
+     */
+    int[] toArray(int length) {
+        Arrays.sort(offsets, 0, count);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            final int offset = offsets[i];
+            if (offset <= 0 || offset >= length || (n > 0 && offsets[n - 1] == offset)) continue;
+            offsets[n++] = offset;
+        }
+        return Arrays.copyOf(offsets, n);
+    }
+}
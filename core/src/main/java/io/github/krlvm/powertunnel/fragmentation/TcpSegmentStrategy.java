@@ -0,0 +1,47 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.fragmentation;
+
+import io.netty.buffer.ByteBuf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Splits the packet into TCP segments at the split offsets
+ */
+public class TcpSegmentStrategy implements FragmentationStrategy {
+
+    public static final TcpSegmentStrategy INSTANCE = new TcpSegmentStrategy();
+
+    @Override
+    public List<ByteBuf> fragment(ByteBuf buf, ClientHello hello, int[] splits) {
+        if (splits.length == 0) return Collections.emptyList();
+
+        final List<ByteBuf> fragments = new ArrayList<>(splits.length + 1);
+        final int start = buf.readerIndex();
+        int i = start;
+        for (int split : splits) {
+            fragments.add(buf.retainedSlice(i, start + split - i));
+            i = start + split;
+        }
+        fragments.add(buf.retainedSlice(i, buf.writerIndex() - i));
+        return fragments;
+    }
+}
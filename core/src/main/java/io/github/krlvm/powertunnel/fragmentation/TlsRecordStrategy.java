@@ -0,0 +1,90 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.fragmentation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Re-frames the first TLS record of the packet into several records
+ * split at the split offsets, record payloads are slices of the packet
+ *
+ * Falls back to {@link TcpSegmentStrategy} if the packet is not a ClientHello
+ * or does not contain the whole ClientHello record
+ */
+public class TlsRecordStrategy implements FragmentationStrategy {
+
+    public static final TlsRecordStrategy SINGLE_SEGMENT = new TlsRecordStrategy(false);
+    public static final TlsRecordStrategy SEPARATE_SEGMENTS = new TlsRecordStrategy(true);
+
+    private static final int RECORD_HEADER_LENGTH = 5;
+
+    private final boolean separateSegments;
+
+    private TlsRecordStrategy(boolean separateSegments) {
+        this.separateSegments = separateSegments;
+    }
+
+    @Override
+    public List<ByteBuf> fragment(ByteBuf buf, ClientHello hello, int[] splits) {
+        // the rest of a truncated record arrives without a record header,
+        // new headers claiming the truncated payload is complete would break the stream
+        if (hello.getRecordLength() < 0 || !hello.isRecordComplete()) {
+            return TcpSegmentStrategy.INSTANCE.fragment(buf, hello, splits);
+        }
+
+        final int start = buf.readerIndex();
+        final int recordEnd = RECORD_HEADER_LENGTH + hello.getRecordLength();
+
+        final List<ByteBuf> records = new ArrayList<>(splits.length + 2);
+        int i = RECORD_HEADER_LENGTH;
+        for (int split : splits) {
+            // split points outside of the record payload can't be record boundaries
+            if (split <= i || split >= recordEnd) continue;
+            records.add(record(buf, start, i, split - i));
+            i = split;
+        }
+        if (records.isEmpty()) return records;
+        records.add(record(buf, start, i, recordEnd - i));
+        // bytes following the first record are sent unchanged
+        if (start + recordEnd < buf.writerIndex()) {
+            records.add(buf.retainedSlice(start + recordEnd, buf.writerIndex() - start - recordEnd));
+        }
+
+        if (separateSegments) return records;
+
+        final CompositeByteBuf composite = buf.alloc().compositeBuffer(records.size());
+        composite.addComponents(true, records);
+        final List<ByteBuf> fragments = new ArrayList<>(1);
+        fragments.add(composite);
+        return fragments;
+    }
+
+    private static ByteBuf record(ByteBuf buf, int start, int offset, int length) {
+        final ByteBuf header = buf.alloc().buffer(RECORD_HEADER_LENGTH);
+        // content type and protocol version are copied from the original record
+        header.writeByte(buf.getByte(start));
+        header.writeShort(buf.getUnsignedShort(start + 1));
+        header.writeShort(length);
+        return buf.alloc().compositeBuffer(2)
+                .addComponents(true, header, buf.retainedSlice(start + offset, length));
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.http;
+
+import io.netty.buffer.ByteBuf;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only {@link ByteBuffer} view of the readable bytes of a {@link ByteBuf}
+ *
+ * Content backed by a single memory region is exposed without copying it,
+ * content of a composite buffer is merged once and reused until the buffer changes
+ */
+class ContentBufferView {
+
+    private ByteBuf source;
+    private int index, length;
+    private ByteBuffer merged;
+
+    ByteBuffer get(ByteBuf buf) {
+        final int index = buf.readerIndex();
+        final int length = buf.readableBytes();
+        if (buf.nioBufferCount() == 1) {
+            return buf.nioBuffer(index, length).asReadOnlyBuffer();
+        }
+        if (merged == null || buf != source || index != this.index || length != this.length) {
+            merged = buf.nioBuffer(index, length).asReadOnlyBuffer();
+            source = buf;
+            this.index = index;
+            this.length = length;
+        }
+        return merged.duplicate();
+    }
+
+    void clear() {
+        source = null;
+        merged = null;
+    }
+}
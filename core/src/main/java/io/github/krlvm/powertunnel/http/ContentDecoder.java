@@ -0,0 +1,151 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.http;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Decoder of gzip and deflate encoded message content
+ *
+ * Inflaters are taken from a bounded pool and reset after use,
+ * so their native memory is not allocated for every message
+ */
+public class ContentDecoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ContentDecoder.class);
+
+    private static final int POOL_SIZE = 16;
+    // protects the heap from compression bombs
+    private static final int MAX_DECODED_SIZE = 64 * 1024 * 1024;
+
+    private static final BlockingQueue<Inflater> ZLIB = new ArrayBlockingQueue<>(POOL_SIZE);
+    private static final BlockingQueue<Inflater> RAW = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    private static final int FHCRC = 0x02, FEXTRA = 0x04, FNAME = 0x08, FCOMMENT = 0x10;
+
+    private ContentDecoder() {}
+
+    /**
+     * Returns whether content with the encoding can be decoded
+     *
+     * @param encoding value of the Content-Encoding header
+     * @return whether the encoding is supported
+     */
+    public static boolean isSupported(String encoding) {
+        if (encoding == null) return false;
+        encoding = encoding.trim().toLowerCase(Locale.ROOT);
+        return encoding.equals("gzip") || encoding.equals("x-gzip") || encoding.equals("deflate");
+    }
+
+    /**
+     * Decodes the content
+     *
+     * @param content encoded content
+     * @param encoding value of the Content-Encoding header
+     * @return decoded content or null if the content can't be decoded
+     */
+    public static ByteBuf decode(ByteBuf content, String encoding) {
+        if (!isSupported(encoding)) return null;
+
+        final byte[] input;
+        final int offset, length = content.readableBytes();
+        if (content.hasArray()) {
+            input = content.array();
+            offset = content.arrayOffset() + content.readerIndex();
+        } else {
+            input = ByteBufUtil.getBytes(content);
+            offset = 0;
+        }
+
+        try {
+            if (encoding.trim().toLowerCase(Locale.ROOT).equals("deflate")) {
+                // some servers send raw deflate stream instead of zlib
+                final boolean zlib = length >= 2 && (input[offset] & 0x0F) == 8
+                        && (((input[offset] & 0xFF) << 8) | (input[offset + 1] & 0xFF)) % 31 == 0;
+                return inflate(zlib ? ZLIB : RAW, !zlib, input, offset, length);
+            }
+            final int header = gzipHeaderLength(input, offset, length);
+            return inflate(RAW, true, input, offset + header, length - header);
+        } catch (DataFormatException ex) {
+            LOGGER.debug("Failed to decode '{}' content: {}", encoding, ex.getMessage());
+            return null;
+        }
+    }
+
+    private static ByteBuf inflate(BlockingQueue<Inflater> pool, boolean nowrap,
+                                   byte[] input, int offset, int length) throws DataFormatException {
+        Inflater inflater = pool.poll();
+        if (inflater == null) inflater = new Inflater(nowrap);
+        try {
+            inflater.setInput(input, offset, length);
+
+            byte[] output = new byte[Math.min(MAX_DECODED_SIZE, Math.max(256, length * 4))];
+            int size = 0;
+            while (!inflater.finished()) {
+                if (size == output.length) {
+                    if (size == MAX_DECODED_SIZE) throw new DataFormatException("Decoded content is too large");
+                    output = Arrays.copyOf(output, (int) Math.min(MAX_DECODED_SIZE, size * 2L));
+                }
+                final int n = inflater.inflate(output, size, output.length - size);
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Unexpected end of compressed content");
+                }
+                size += n;
+            }
+            return Unpooled.wrappedBuffer(output, 0, size);
+        } finally {
+            inflater.reset();
+            if (!pool.offer(inflater)) inflater.end();
+        }
+    }
+
+    private static int gzipHeaderLength(byte[] input, int offset, int length) throws DataFormatException {
+        if (length < 10 || (input[offset] & 0xFF) != 0x1F || (input[offset + 1] & 0xFF) != 0x8B || input[offset + 2] != 8) {
+            throw new DataFormatException("Not in gzip format");
+        }
+        final int flags = input[offset + 3] & 0xFF;
+        int i = 10;
+        if ((flags & FEXTRA) != 0) {
+            if (length < i + 2) throw new DataFormatException("Truncated gzip header");
+            i += 2 + ((input[offset + i] & 0xFF) | (input[offset + i + 1] & 0xFF) << 8);
+        }
+        if ((flags & FNAME) != 0) i = skipZeroTerminated(input, offset, length, i);
+        if ((flags & FCOMMENT) != 0) i = skipZeroTerminated(input, offset, length, i);
+        if ((flags & FHCRC) != 0) i += 2;
+        if (i > length) throw new DataFormatException("Truncated gzip header");
+        return i;
+    }
+
+    private static int skipZeroTerminated(byte[] input, int offset, int length, int i) throws DataFormatException {
+        while (i < length) {
+            if (input[offset + i++] == 0) return i;
+        }
+        throw new DataFormatException("Truncated gzip header");
+    }
+}
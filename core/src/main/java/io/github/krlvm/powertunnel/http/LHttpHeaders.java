@@ -17,28 +17,85 @@
 
 package io.github.krlvm.powertunnel.http;
 
+import io.github.krlvm.powertunnel.sdk.http.HttpHeaderName;
+import io.github.krlvm.powertunnel.sdk.http.HttpHeaderNames;
 import io.github.krlvm.powertunnel.sdk.http.HttpHeaders;
+import io.netty.util.AsciiString;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
 import java.util.Set;
 
 public class LHttpHeaders implements HttpHeaders {
 
+    // predefined SDK header names resolved to Netty names with cached hashes,
+    // names built by plugins are passed as is, so the map does not grow
+    private static final Map<HttpHeaderName, AsciiString> NAMES;
+    static {
+        final Map<HttpHeaderName, AsciiString> names = new HashMap<>();
+        for (Field field : HttpHeaderNames.class.getFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || field.getType() != HttpHeaderName.class) continue;
+            try {
+                final HttpHeaderName name = (HttpHeaderName) field.get(null);
+                names.put(name, AsciiString.cached(name.toString()));
+            } catch (IllegalAccessException ex) {
+                throw new IllegalStateException("Failed to access header name", ex);
+            }
+        }
+        NAMES = Collections.unmodifiableMap(names);
+    }
+
     private final io.netty.handler.codec.http.HttpHeaders headers;
 
+    // names are cached until the headers are modified through this wrapper or the wrapper is invalidated
+    private Set<String> names;
+
     public LHttpHeaders(io.netty.handler.codec.http.HttpHeaders headers) {
         this.headers = headers;
     }
 
+    /**
+     * Drops cached data, must be called when the headers
+     * could have been modified bypassing this wrapper
+     */
+    public void invalidate() {
+        this.names = null;
+    }
+
+    private static CharSequence name(CharSequence name) {
+        if (name instanceof HttpHeaderName) {
+            final AsciiString ascii = NAMES.get(name);
+            if (ascii != null) return ascii;
+        }
+        return name;
+    }
+
     @Override
     public @Nullable String get(String name) {
         return headers.get(name);
     }
 
+    @Override
+    public @Nullable String get(@NotNull CharSequence name) {
+        return headers.get(name(name));
+    }
+
     @Override
     public void set(@NotNull String name, @NotNull String value) {
         headers.set(name, value);
+        invalidate();
+    }
+
+    @Override
+    public void set(@NotNull CharSequence name, @NotNull CharSequence value) {
+        headers.set(name(name), value);
+        invalidate();
     }
 
     @Override
@@ -46,9 +103,15 @@ public class LHttpHeaders implements HttpHeaders {
         return headers.getInt(name);
     }
 
+    @Override
+    public @Nullable Integer getInt(@NotNull CharSequence name) {
+        return headers.getInt(name(name));
+    }
+
     @Override
     public void setInt(@NotNull String name, int value) {
         headers.setInt(name, value);
+        invalidate();
     }
 
     @Override
@@ -59,11 +122,14 @@ public class LHttpHeaders implements HttpHeaders {
     @Override
     public void setShort(@NotNull String name, short value) {
         headers.setShort(name, value);
+        invalidate();
     }
 
     @Override
     public @NotNull Set<String> names() {
-        return headers.names();
+        Set<String> names = this.names;
+        if (names == null) this.names = names = Collections.unmodifiableSet(headers.names());
+        return names;
     }
 
     @Override
@@ -71,9 +137,39 @@ public class LHttpHeaders implements HttpHeaders {
         return headers.contains(name);
     }
 
+    @Override
+    public boolean contains(@NotNull CharSequence name) {
+        return headers.contains(name(name));
+    }
+
+    @Override
+    public boolean containsValue(@NotNull CharSequence name, @NotNull CharSequence value) {
+        return headers.contains(name(name), value, true);
+    }
+
     @Override
     public void remove(@NotNull String name) {
         headers.remove(name);
+        invalidate();
+    }
+
+    @Override
+    public void remove(@NotNull CharSequence name) {
+        headers.remove(name(name));
+        invalidate();
+    }
+
+    /**
+     * Visits the header entries in place, without copying names and values,
+     * Netty 4.1 has no visitor API, so one iterator is allocated per call
+     */
+    @Override
+    public void forEach(@NotNull Visitor visitor) {
+        final Iterator<Map.Entry<CharSequence, CharSequence>> iterator = headers.iteratorCharSequence();
+        while (iterator.hasNext()) {
+            final Map.Entry<CharSequence, CharSequence> entry = iterator.next();
+            if (!visitor.visit(entry.getKey(), entry.getValue())) return;
+        }
     }
 
     @Override
@@ -0,0 +1,120 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.http;
+
+import io.github.krlvm.powertunnel.listener.HostMatch;
+import io.github.krlvm.powertunnel.sdk.http.ProxyChunk;
+import io.github.krlvm.powertunnel.sdk.types.FullAddress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+public class LProxyChunk implements ProxyChunk, HostMatch.Holder {
+
+    private HttpContent httpContent;
+    private final ContentBufferView contentView = new ContentBufferView();
+
+    private final FullAddress address;
+    private HostMatch hostMatch;
+
+    public LProxyChunk(HttpContent httpContent, FullAddress address) {
+        this.httpContent = httpContent;
+        this.address = address;
+    }
+
+    /**
+     * Binds the wrapper to the chunk,
+     * so the same wrapper can be reused for all the chunks of the body
+     *
+     * @param httpContent chunk
+     */
+    public void bind(HttpContent httpContent) {
+        this.httpContent = httpContent;
+        this.contentView.clear();
+    }
+
+    @Override
+    public @Nullable FullAddress address() {
+        return address;
+    }
+
+    @Override
+    public boolean isLast() {
+        return httpContent instanceof LastHttpContent;
+    }
+
+    @Override
+    public int length() {
+        return httpContent.content().readableBytes();
+    }
+
+    @Override
+    public byte[] content() {
+        final ByteBuf buf = httpContent.content();
+        return ByteBufUtil.getBytes(buf, buf.readerIndex(), buf.readableBytes(), false);
+    }
+
+    @Override
+    public @NotNull ByteBuffer contentBuffer() {
+        return contentView.get(httpContent.content());
+    }
+
+    @Override
+    public @NotNull CharSequence contentChars() {
+        final ByteBuf buf = httpContent.content();
+        return new Latin1CharSequence(buf, buf.readerIndex(), buf.readableBytes());
+    }
+
+    @Override
+    public void setContent(@NotNull byte[] content) {
+        final ByteBuf buf = Unpooled.wrappedBuffer(content);
+        if (httpContent instanceof LastHttpContent) {
+            final LastHttpContent last = new DefaultLastHttpContent(buf);
+            last.trailingHeaders().set(((LastHttpContent) httpContent).trailingHeaders());
+            httpContent = last;
+        } else {
+            httpContent = new DefaultHttpContent(buf);
+        }
+    }
+
+    /**
+     * Shares the host match of the connection with the wrapper
+     *
+     * @param hostMatch host match of the connection
+     */
+    public void setHostMatch(HostMatch hostMatch) {
+        this.hostMatch = hostMatch;
+    }
+
+    @Override
+    public HostMatch getHostMatch() {
+        return hostMatch;
+    }
+
+    public HttpContent getLittleProxyObject() {
+        return httpContent;
+    }
+}
@@ -17,24 +17,56 @@
 
 package io.github.krlvm.powertunnel.http;
 
+import io.github.krlvm.powertunnel.listener.HostMatch;
 import io.github.krlvm.powertunnel.sdk.http.HttpHeaders;
 import io.github.krlvm.powertunnel.sdk.http.ProxyMessage;
 import io.github.krlvm.powertunnel.sdk.types.FullAddress;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufHolder;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
-public abstract class LProxyMessage<T> implements ProxyMessage {
+import java.nio.ByteBuffer;
+
+public abstract class LProxyMessage<T> implements ProxyMessage, HostMatch.Holder {
 
     protected T httpObject;
-    protected HttpHeaders headers;
+    protected LHttpHeaders headers;
+
+    // object the wrapper was bound to, httpObject is replaced when the content is changed
+    private T source;
+
+    private final ContentBufferView contentView = new ContentBufferView();
 
     protected final FullAddress address;
+    private HostMatch hostMatch;
 
     protected LProxyMessage(T httpObject, FullAddress address) {
         this.httpObject = httpObject;
+        this.source = httpObject;
         this.address = address;
     }
 
+    /**
+     * Binds the wrapper to the object if the wrapper does not follow it yet,
+     * so the same wrapper can be reused through all the filter phases
+     *
+     * @param httpObject object to follow
+     * @return whether the wrapper has been bound to another object
+     */
+    public boolean bind(T httpObject) {
+        if (httpObject == this.source || httpObject == this.httpObject) {
+            // headers could have been changed by the proxy server between the phases
+            if (headers != null) headers.invalidate();
+            return false;
+        }
+        this.httpObject = httpObject;
+        this.source = httpObject;
+        this.headers = null;
+        this.contentView.clear();
+        return true;
+    }
+
     @Override
     public @Nullable FullAddress address() {
         return address;
@@ -48,6 +80,68 @@ public abstract class LProxyMessage<T> implements ProxyMessage {
 
     protected abstract io.netty.handler.codec.http.HttpHeaders getHeaders();
 
+    protected ByteBuf getContent() {
+        if(!(httpObject instanceof ByteBufHolder)) throw new IllegalStateException("Can't get raw content of HTTP message chunk");
+        return ((ByteBufHolder) httpObject).content();
+    }
+
+    @Override
+    public int contentLength() {
+        return getContent().readableBytes();
+    }
+
+    @Override
+    public @NotNull ByteBuffer contentBuffer() {
+        // aggregated bodies are usually composite buffers, they are merged only once per message
+        return contentView.get(getContent());
+    }
+
+    @Override
+    public @NotNull CharSequence contentChars() {
+        final ByteBuf buf = getContent();
+        return new Latin1CharSequence(buf, buf.readerIndex(), buf.readableBytes());
+    }
+
+    @Override
+    public int indexOf(@NotNull byte[] needle, int fromIndex) {
+        final ByteBuf buf = getContent();
+        final int start = buf.readerIndex();
+        final int length = buf.readableBytes();
+        if(fromIndex < 0) fromIndex = 0;
+        if(needle.length == 0) return Math.min(fromIndex, length);
+
+        final int last = start + length - needle.length;
+        int i = start + fromIndex;
+        while (i <= last) {
+            final int found = buf.indexOf(i, last + 1, needle[0]);
+            if(found < 0) return -1;
+            if(regionMatches(buf, found, needle)) return found - start;
+            i = found + 1;
+        }
+        return -1;
+    }
+
+    private static boolean regionMatches(ByteBuf buf, int index, byte[] needle) {
+        for (int i = 1; i < needle.length; i++) {
+            if(buf.getByte(index + i) != needle[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Shares the host match of the connection with the wrapper
+     *
+     * @param hostMatch host match of the connection
+     */
+    public void setHostMatch(HostMatch hostMatch) {
+        this.hostMatch = hostMatch;
+    }
+
+    @Override
+    public HostMatch getHostMatch() {
+        return hostMatch;
+    }
+
     public T getLittleProxyObject() {
         return httpObject;
     }
@@ -30,12 +30,23 @@ import org.jetbrains.annotations.Nullable;
 
 public class LProxyRequest extends LProxyMessage<HttpRequest> implements ProxyRequest {
 
+    private static final FullHttpResponse BLOCKED = new LProxyResponse.Builder("Access denied by proxy server", 403)
+            .contentType("text/plain")
+            .buildTemplate();
+
     private ProxyResponse response;
 
     public LProxyRequest(HttpRequest request, FullAddress address) {
         super(request, address);
     }
 
+    @Override
+    public boolean bind(HttpRequest request) {
+        if (!super.bind(request)) return false;
+        this.response = null;
+        return true;
+    }
+
     @Override
     public @NotNull HttpMethod getMethod() {
         return HttpMethod.valueOf(httpObject.method().name());
@@ -59,10 +70,7 @@ public class LProxyRequest extends LProxyMessage<HttpRequest> implements ProxyRe
     @Override
     public void setBlocked(boolean blocked) {
         if (blocked) {
-            setResponse(new LProxyResponse.Builder("Access denied by proxy server", 403)
-                    .contentType("text/plain")
-                    .build()
-            );
+            setResponse(LProxyResponse.Builder.fromTemplate(BLOCKED));
         } else {
             this.response = null;
         }
@@ -120,6 +128,7 @@ public class LProxyRequest extends LProxyMessage<HttpRequest> implements ProxyRe
         response.headers().set(HttpHeaderNames.CONTENT_LENGTH, content.length);
 
         httpObject = response;
+        headers = null;
     }
 
     @Override
@@ -129,6 +138,6 @@ public class LProxyRequest extends LProxyMessage<HttpRequest> implements ProxyRe
 
     public HttpResponse getLittleProxyResponse() {
         if(this.response == null) return null;
-        return ((LProxyResponse) this.response).getLittleProxyObject();
+        return ((LProxyResponse) this.response).getShortCircuitResponse();
     }
 }
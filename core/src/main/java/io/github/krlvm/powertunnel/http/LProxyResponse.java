@@ -25,11 +25,32 @@ import io.netty.buffer.Unpooled;
 import io.netty.handler.codec.http.*;
 
 import java.nio.charset.StandardCharsets;
+import java.util.Objects;
 
 public class LProxyResponse extends LProxyMessage<HttpResponse> implements ProxyResponse {
 
+    // content decoded on first access, shared by all listeners,
+    // it is decoded again if a listener changes the Content-Encoding header
+    private ByteBuf decoded;
+    private String decodedEncoding;
+
+    // template responses can be sent many times, their content is never released
+    private final boolean template;
+
     public LProxyResponse(HttpResponse response, FullAddress address) {
+        this(response, address, false);
+    }
+
+    LProxyResponse(HttpResponse response, FullAddress address, boolean template) {
         super(response, address);
+        this.template = template;
+    }
+
+    @Override
+    public boolean bind(HttpResponse response) {
+        if (!super.bind(response)) return false;
+        this.decoded = null;
+        return true;
     }
 
     @Override
@@ -51,8 +72,26 @@ public class LProxyResponse extends LProxyMessage<HttpResponse> implements Proxy
     public byte[] content() {
         if(!isDataPacket()) throw new IllegalStateException("Can't get raw content of HttpResponse chunk");
 
-        final ByteBuf buf = ((FullHttpResponse) httpObject).content();
-        return ByteBufUtil.getBytes(buf, 0, buf.readableBytes(), false);
+        final ByteBuf buf = getContent();
+        return ByteBufUtil.getBytes(buf, buf.readerIndex(), buf.readableBytes(), false);
+    }
+
+    /**
+     * Returns content decoded from gzip or deflate,
+     * the content is decoded only when it is accessed and only once for each encoding
+     *
+     * @return decoded content
+     */
+    @Override
+    protected ByteBuf getContent() {
+        final String encoding = httpObject.headers().get(HttpHeaderNames.CONTENT_ENCODING);
+        if(decoded == null || !Objects.equals(encoding, decodedEncoding)) {
+            final ByteBuf raw = super.getContent();
+            final ByteBuf buf = ContentDecoder.decode(raw, encoding);
+            decoded = buf != null ? buf : raw;
+            decodedEncoding = encoding;
+        }
+        return decoded;
     }
 
     @Override
@@ -62,12 +101,18 @@ public class LProxyResponse extends LProxyMessage<HttpResponse> implements Proxy
         final HttpResponse response = new DefaultFullHttpResponse(
                 httpObject.protocolVersion(),
                 httpObject.status(),
-                Unpooled.wrappedBuffer(content));
+                template ? Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(content)) : Unpooled.wrappedBuffer(content));
         response.headers().set(httpObject.headers());
 
+        // the new content is sent as is, the client-side link does not need compression
+        if(ContentDecoder.isSupported(response.headers().get(HttpHeaderNames.CONTENT_ENCODING))) {
+            response.headers().remove(HttpHeaderNames.CONTENT_ENCODING);
+        }
         response.headers().set(HttpHeaderNames.CONTENT_LENGTH, content.length);
 
         httpObject = response;
+        headers = null;
+        decoded = null;
     }
 
     @Override
@@ -75,6 +120,20 @@ public class LProxyResponse extends LProxyMessage<HttpResponse> implements Proxy
         return httpObject.headers();
     }
 
+    /**
+     * Returns response to be sent to the client instead of proxying the request,
+     * template responses are sent as duplicates sharing their content,
+     * so the proxy server can modify and release them
+     *
+     * @return short-circuit response
+     */
+    public HttpResponse getShortCircuitResponse() {
+        if(template && httpObject instanceof FullHttpResponse) {
+            return ((FullHttpResponse) httpObject).retainedDuplicate();
+        }
+        return httpObject;
+    }
+
     public static class Builder implements ProxyResponse.Builder {
 
         private final DefaultFullHttpResponse response;
@@ -89,44 +148,60 @@ public class LProxyResponse extends LProxyMessage<HttpResponse> implements Proxy
 
         public Builder(HttpResponseStatus status, String content) {
             final byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
-            response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status, Unpooled.wrappedBuffer(bytes));
+            // content is unreleasable, so the built response can be sent more than once
+            response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, status,
+                    Unpooled.unreleasableBuffer(Unpooled.wrappedBuffer(bytes)));
             response.headers().set(HttpHeaderNames.CONTENT_LENGTH, bytes.length);
-            response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.CLOSE);
         }
 
         @Override
-        public ProxyResponse.Builder code(int code) {
+        public Builder code(int code) {
             response.setStatus(HttpResponseStatus.valueOf(code));
             return this;
         }
 
         @Override
-        public ProxyResponse.Builder contentType(String contentType) {
+        public Builder contentType(String contentType) {
             response.headers().set(HttpHeaderNames.CONTENT_TYPE, contentType + "; charset=UTF-8");
             return this;
         }
 
         @Override
-        public ProxyResponse.Builder header(String name, String value) {
+        public Builder header(String name, String value) {
             response.headers().set(name, value);
             return this;
         }
 
         @Override
-        public ProxyResponse.Builder header(String name, int value) {
+        public Builder header(String name, int value) {
             response.headers().setInt(name, value);
             return this;
         }
 
         @Override
-        public ProxyResponse.Builder header(String name, short value) {
+        public Builder header(String name, short value) {
             response.headers().setShort(name, value);
             return this;
         }
 
         @Override
         public ProxyResponse build() {
-            return new LProxyResponse(response, null);
+            return new LProxyResponse(response, null, true);
+        }
+
+        /**
+         * Builds response sharing the content and copying the headers
+         * of the built template, so the template itself is never modified
+         *
+         * @param template template response
+         * @return response
+         */
+        static LProxyResponse fromTemplate(FullHttpResponse template) {
+            return new LProxyResponse(template.retainedDuplicate(), null, true);
+        }
+
+        FullHttpResponse buildTemplate() {
+            return response;
         }
     }
 }
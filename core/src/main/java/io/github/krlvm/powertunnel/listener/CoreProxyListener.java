@@ -17,103 +17,582 @@
 
 package io.github.krlvm.powertunnel.listener;
 
+import io.github.krlvm.powertunnel.sdk.http.ProxyChunk;
 import io.github.krlvm.powertunnel.sdk.http.ProxyRequest;
 import io.github.krlvm.powertunnel.sdk.http.ProxyResponse;
+import io.github.krlvm.powertunnel.sdk.proxy.AsyncProxyListener;
 import io.github.krlvm.powertunnel.sdk.proxy.DNSRequest;
+import io.github.krlvm.powertunnel.sdk.proxy.DispatchMode;
+import io.github.krlvm.powertunnel.sdk.proxy.Fragmentation;
+import io.github.krlvm.powertunnel.sdk.proxy.HostFilter;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
 import io.github.krlvm.powertunnel.sdk.types.FullAddress;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
-public class CoreProxyListener implements ProxyListener {
+/**
+ * Dispatches proxy events to the registered listeners
+ *
+ * Listeners are compiled into per-hook tables, so each hook
+ * is dispatched only to the listeners that actually handle it
+ *
+ * Host filters of the listeners are compiled into a {@link DomainIndex},
+ * so listeners subscribed to specific hosts are called only for them
+ *
+ * Decisions that are stable per address (chunking, MITM and SNI)
+ * are cached in a {@link DecisionCache} until the listeners are changed
+ * or the cache is invalidated
+ *
+ * When an {@link AsyncProxyListener} is subscribed to a request, the whole
+ * client to proxy request chain is run on the worker pool in priority order
+ *
+ * In {@link DispatchMode#SHORT_CIRCUIT} mode the request chain is stopped
+ * as soon as a listener blocks the request or sets a response
+ */
+public class CoreProxyListener implements AsyncProxyListener {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(CoreProxyListener.class);
 
-    private final Map<ProxyListenerInfo, ProxyListener> proxyListeners;
+    private static final ProxyListenerHook[] HOOKS = ProxyListenerHook.values();
+
+    private final ProxyListenerRegistry proxyListeners;
+    private volatile Dispatch dispatch;
+
+    private final DecisionCache decisions = new DecisionCache(4096, 5, TimeUnit.MINUTES);
 
-    public CoreProxyListener(Map<ProxyListenerInfo, ProxyListener> proxyListeners) {
+    private static final int WORKER_THREADS = Math.max(4, Runtime.getRuntime().availableProcessors() * 2);
+    private volatile ExecutorService worker;
+
+    private volatile DispatchMode dispatchMode = DispatchMode.FULL;
+
+    public CoreProxyListener(ProxyListenerRegistry proxyListeners) {
         this.proxyListeners = proxyListeners;
+        compile();
+    }
+
+    /**
+     * Rebuilds dispatch tables from the registered listeners,
+     * should be called each time the listeners are changed
+     */
+    public synchronized void compile() {
+        final List<List<ProxyListenerEntry>> lists = new ArrayList<>(HOOKS.length);
+        for (int i = 0; i < HOOKS.length; i++) lists.add(new ArrayList<>());
+        final List<HostFilter> filters = new ArrayList<>();
+        final List<ProxyListenerEntry> clientToProxyChain = new ArrayList<>();
+
+        for (ProxyListenerRegistry.Registration registration : proxyListeners.snapshot()) {
+            final HostFilter filter = registration.getInfo().getHostFilter();
+            final int filterIndex = filter != null ? filters.size() : -1;
+            if (filter != null) filters.add(filter);
+
+            final ProxyListenerEntry listener = new ProxyListenerEntry(registration.getInfo(), registration.getListener(), filterIndex);
+            for (ProxyListenerHook hook : HOOKS) {
+                if (listener.implementsHook(hook)) lists.get(hook.ordinal()).add(listener);
+            }
+            if (listener.implementsHook(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST)
+                    || listener.implementsHook(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST_ASYNC)) {
+                clientToProxyChain.add(listener);
+            }
+        }
+        if (!lists.get(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST_ASYNC.ordinal()).isEmpty() && worker == null) {
+            worker = createWorker();
+        }
+
+        final ProxyListenerEntry[][] tables = new ProxyListenerEntry[HOOKS.length][];
+        for (int i = 0; i < HOOKS.length; i++) {
+            tables[i] = lists.get(i).toArray(new ProxyListenerEntry[0]);
+        }
+        this.dispatch = new Dispatch(
+                tables,
+                clientToProxyChain.toArray(new ProxyListenerEntry[0]),
+                filters.isEmpty() ? null : new DomainIndex(filters.toArray(new HostFilter[0]))
+        );
+        decisions.invalidate();
+    }
+
+    /**
+     * Stops the worker pool of asynchronous listeners
+     */
+    public void shutdown() {
+        final ExecutorService worker = this.worker;
+        if (worker != null) worker.shutdown();
+        this.worker = null;
+    }
+
+    private static ExecutorService createWorker() {
+        final AtomicInteger counter = new AtomicInteger();
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+                WORKER_THREADS, WORKER_THREADS,
+                60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(),
+                runnable -> {
+                    final Thread thread = new Thread(runnable, "PowerTunnel-AsyncListener-" + counter.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+        );
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Removes all cached listener decisions
+     */
+    public void invalidateDecisions() {
+        decisions.invalidate();
+    }
+
+    /**
+     * Removes listener decisions cached for the host
+     *
+     * @param host host
+     */
+    public void invalidateDecisions(String host) {
+        decisions.invalidate(host);
     }
 
     @Override
     public void onClientToProxyRequest(@NotNull ProxyRequest request) {
-        callProxyListeners((ProxyListenerCallback.Void) listener -> listener.onClientToProxyRequest(request));
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST);
+        if (table.length == 0) return;
+        final long[] hosts = dispatch.match(request.getHost(), request);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final boolean decided = request.isBlocked();
+            final long start = System.nanoTime();
+            try {
+                entry.getListener().onClientToProxyRequest(request);
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST).record(System.nanoTime() - start);
+            }
+            if (!decided && shortCircuits(entry, request, ProxyListenerHook.CLIENT_TO_PROXY_REQUEST)) break;
+        }
+    }
+
+    /**
+     * Runs client to proxy request chain on the worker pool
+     * if an asynchronous listener is subscribed to the request
+     *
+     * @param request client request
+     * @return stage completed when the chain is finished
+     *         or null if the request has to be handled synchronously
+     */
+    @Override
+    public @Nullable CompletionStage<Void> onClientToProxyRequestAsync(@NotNull ProxyRequest request) {
+        final Dispatch dispatch = this.dispatch;
+        final ExecutorService worker = this.worker;
+        if (worker == null) return null;
+
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST_ASYNC);
+        if (table.length == 0) return null;
+        final long[] hosts = dispatch.match(request.getHost(), request);
+        boolean async = false;
+        for (ProxyListenerEntry entry : table) {
+            if (entry.accepts(hosts)) {
+                async = true;
+                break;
+            }
+        }
+        if (!async) return null;
+
+        final AtomicBoolean stopped = new AtomicBoolean();
+        CompletableFuture<Void> chain = CompletableFuture.completedFuture(null);
+        for (ProxyListenerEntry entry : dispatch.clientToProxyChain) {
+            if (!entry.accepts(hosts)) continue;
+            if (entry.implementsHook(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST)) {
+                chain = chain.thenRunAsync(() -> {
+                    if (stopped.get()) return;
+                    final boolean decided = request.isBlocked();
+                    final long start = System.nanoTime();
+                    try {
+                        entry.getListener().onClientToProxyRequest(request);
+                    } catch (Exception ex) {
+                        logError(entry, ex);
+                    } finally {
+                        entry.getInfo().getLatency(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST).record(System.nanoTime() - start);
+                    }
+                    if (!decided && shortCircuits(entry, request, ProxyListenerHook.CLIENT_TO_PROXY_REQUEST)) stopped.set(true);
+                }, worker);
+            }
+            if (entry.implementsHook(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST_ASYNC)) {
+                chain = chain.thenComposeAsync(v -> {
+                    if (stopped.get()) return CompletableFuture.completedFuture(null);
+                    final boolean decided = request.isBlocked();
+                    final long start = System.nanoTime();
+                    final LatencyHistogram latency = entry.getInfo().getLatency(ProxyListenerHook.CLIENT_TO_PROXY_REQUEST_ASYNC);
+                    CompletionStage<Void> stage;
+                    try {
+                        stage = ((AsyncProxyListener) entry.getListener()).onClientToProxyRequestAsync(request);
+                    } catch (Exception ex) {
+                        logError(entry, ex);
+                        stage = null;
+                    }
+                    // null means the listener has handled the request synchronously
+                    if (stage == null) stage = CompletableFuture.completedFuture(null);
+                    return stage.handle((res, ex) -> {
+                        latency.record(System.nanoTime() - start);
+                        if (ex != null) logError(entry, ex);
+                        if (!decided && shortCircuits(entry, request, ProxyListenerHook.CLIENT_TO_PROXY_REQUEST_ASYNC)) stopped.set(true);
+                        return null;
+                    });
+                }, worker);
+            }
+        }
+        return chain;
     }
 
     @Override
     public void onProxyToServerRequest(@NotNull ProxyRequest request) {
-        callProxyListeners((ProxyListenerCallback.Void) listener -> listener.onProxyToServerRequest(request));
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.PROXY_TO_SERVER_REQUEST);
+        if (table.length == 0) return;
+        final long[] hosts = dispatch.match(request.getHost(), request);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final boolean decided = request.isBlocked();
+            final long start = System.nanoTime();
+            try {
+                entry.getListener().onProxyToServerRequest(request);
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.PROXY_TO_SERVER_REQUEST).record(System.nanoTime() - start);
+            }
+            if (!decided && shortCircuits(entry, request, ProxyListenerHook.PROXY_TO_SERVER_REQUEST)) break;
+        }
     }
 
     @Override
     public void onServerToProxyResponse(@NotNull ProxyResponse response) {
-        callProxyListeners((ProxyListenerCallback.Void) listener -> listener.onServerToProxyResponse(response));
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.SERVER_TO_PROXY_RESPONSE);
+        if (table.length == 0) return;
+        final long[] hosts = dispatch.match(host(response.address()), response);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                entry.getListener().onServerToProxyResponse(response);
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.SERVER_TO_PROXY_RESPONSE).record(System.nanoTime() - start);
+            }
+        }
     }
 
     @Override
     public void onProxyToClientResponse(@NotNull ProxyResponse response) {
-        callProxyListeners((ProxyListenerCallback.Void) listener -> listener.onProxyToClientResponse(response));
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.PROXY_TO_CLIENT_RESPONSE);
+        if (table.length == 0) return;
+        final long[] hosts = dispatch.match(host(response.address()), response);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                entry.getListener().onProxyToClientResponse(response);
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.PROXY_TO_CLIENT_RESPONSE).record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public void onRequestChunk(@NotNull ProxyChunk chunk) {
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.REQUEST_CHUNK);
+        if (table.length == 0) return;
+        final long[] hosts = dispatch.match(host(chunk.address()), chunk);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                entry.getListener().onRequestChunk(chunk);
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.REQUEST_CHUNK).record(System.nanoTime() - start);
+            }
+        }
+    }
+
+    @Override
+    public void onResponseChunk(@NotNull ProxyChunk chunk) {
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.RESPONSE_CHUNK);
+        if (table.length == 0) return;
+        final long[] hosts = dispatch.match(host(chunk.address()), chunk);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                entry.getListener().onResponseChunk(chunk);
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.RESPONSE_CHUNK).record(System.nanoTime() - start);
+            }
+        }
     }
 
     @Override
     public Boolean onResolutionRequest(@NotNull DNSRequest request) {
-        final Object result = callProxyListeners(listener -> listener.onResolutionRequest(request), false);
-        return ((Boolean) result);
+        Boolean result = null;
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.RESOLUTION_REQUEST);
+        if (table.length == 0) return null;
+        final long[] hosts = dispatch.match(request.getHost(), null);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                final Boolean res = entry.getListener().onResolutionRequest(request);
+                if (res != null) result = res;
+            } catch (Exception ex) {
+                logError(entry, ex);
+                result = false;
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.RESOLUTION_REQUEST).record(System.nanoTime() - start);
+            }
+        }
+        return result;
     }
 
     @Override
     public Integer onGetChunkSize(final @NotNull FullAddress address) {
-        final Object result = callProxyListeners(listener -> listener.onGetChunkSize(address));
-        return result != null ? ((int) result) : 0;
+        if (address == null) return dispatchChunkSize(address);
+        return decisions.get(address).getChunkSize(() -> dispatchChunkSize(address));
+    }
+
+    private Integer dispatchChunkSize(final @NotNull FullAddress address) {
+        Integer result = null;
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.GET_CHUNK_SIZE);
+        if (table.length == 0) return 0;
+        final long[] hosts = dispatch.match(host(address), null);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                final Integer res = entry.getListener().onGetChunkSize(address);
+                if (res != null) result = res;
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.GET_CHUNK_SIZE).record(System.nanoTime() - start);
+            }
+        }
+        return result != null ? result : 0;
     }
 
     @Override
     public Boolean isFullChunking(@NotNull FullAddress address) {
-        final Object result = callProxyListeners(listener -> listener.isFullChunking(address));
-        return result != null && ((boolean) result);
+        if (address == null) return dispatchFullChunking(address);
+        return decisions.get(address).isFullChunking(() -> dispatchFullChunking(address));
+    }
+
+    private Boolean dispatchFullChunking(@NotNull FullAddress address) {
+        Boolean result = null;
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.FULL_CHUNKING);
+        if (table.length == 0) return false;
+        final long[] hosts = dispatch.match(host(address), null);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                final Boolean res = entry.getListener().isFullChunking(address);
+                if (res != null) result = res;
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.FULL_CHUNKING).record(System.nanoTime() - start);
+            }
+        }
+        return result != null && result;
+    }
+
+    @Override
+    public Fragmentation onGetFragmentation(@NotNull FullAddress address) {
+        if (address == null) return dispatchFragmentation(address);
+        return (Fragmentation) decisions.get(address).getFragmentation(() -> dispatchFragmentation(address));
+    }
+
+    private Fragmentation dispatchFragmentation(@NotNull FullAddress address) {
+        Fragmentation result = null;
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.GET_FRAGMENTATION);
+        if (table.length == 0) return null;
+        final long[] hosts = dispatch.match(host(address), null);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                final Fragmentation res = entry.getListener().onGetFragmentation(address);
+                if (res != null) result = res;
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.GET_FRAGMENTATION).record(System.nanoTime() - start);
+            }
+        }
+        return result;
     }
 
     @Override
     public Boolean isMITMAllowed(@NotNull FullAddress address) {
-        final Object result = callProxyListeners(listener -> listener.isMITMAllowed(address));
-        return result == null || ((boolean) result);
+        if (address == null) return dispatchMITMAllowed(address);
+        return decisions.get(address).isMITMAllowed(() -> dispatchMITMAllowed(address));
+    }
+
+    private Boolean dispatchMITMAllowed(@NotNull FullAddress address) {
+        Boolean result = null;
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.MITM_ALLOWED);
+        if (table.length == 0) return true;
+        final long[] hosts = dispatch.match(host(address), null);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                final Boolean res = entry.getListener().isMITMAllowed(address);
+                if (res != null) result = res;
+            } catch (Exception ex) {
+                logError(entry, ex);
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.MITM_ALLOWED).record(System.nanoTime() - start);
+            }
+        }
+        return result == null || result;
     }
 
     @Override
     public Object onGetSNI(@NotNull String hostname) {
-        final Object result = callProxyListeners(listener -> listener.onGetSNI(hostname), null, Void.TYPE);
+        return decisions.get(new FullAddress(hostname, -1)).getSNI(() -> dispatchSNI(hostname));
+    }
+
+    private Object dispatchSNI(@NotNull String hostname) {
+        Object result = Void.TYPE;
+        final Dispatch dispatch = this.dispatch;
+        final ProxyListenerEntry[] table = dispatch.table(ProxyListenerHook.GET_SNI);
+        if (table.length == 0) return hostname;
+        final long[] hosts = dispatch.match(hostname, null);
+        for (ProxyListenerEntry entry : table) {
+            if (!entry.accepts(hosts)) continue;
+            final long start = System.nanoTime();
+            try {
+                final Object res = entry.getListener().onGetSNI(hostname);
+                if (res != Void.TYPE) result = res;
+            } catch (Exception ex) {
+                logError(entry, ex);
+                result = null;
+            } finally {
+                entry.getInfo().getLatency(ProxyListenerHook.GET_SNI).record(System.nanoTime() - start);
+            }
+        }
         return result != Void.TYPE ? result : hostname;
     }
 
-    private Object callProxyListeners(ProxyListenerCallback callback) {
-        return callProxyListeners(callback, null);
+    /**
+     * Returns latency statistics of the registered listeners
+     * for the hooks they handle
+     *
+     * @return latency statistics
+     */
+    public List<ListenerLatency> getLatencies() {
+        final List<ListenerLatency> latencies = new ArrayList<>();
+        final Dispatch dispatch = this.dispatch;
+        for (ProxyListenerHook hook : HOOKS) {
+            for (ProxyListenerEntry entry : dispatch.table(hook)) {
+                latencies.add(new ListenerLatency(entry.getInfo(), entry.getListener(), hook, entry.getInfo().getLatency(hook)));
+            }
+        }
+        return latencies;
     }
 
-    private Object callProxyListeners(ProxyListenerCallback callback, Object errVal) {
-        return callProxyListeners(callback, errVal, null);
+    public void setDispatchMode(DispatchMode dispatchMode) {
+        this.dispatchMode = dispatchMode;
     }
 
-    private Object callProxyListeners(ProxyListenerCallback callback, Object errVal, Object defObj) {
-        Object result = defObj;
-        for (Map.Entry<ProxyListenerInfo, ProxyListener> entry : proxyListeners.entrySet()) {
-            Object res;
-            try {
-                res = callback.call(entry.getValue());
-            } catch (Exception ex) {
-                LOGGER.error(
-                        "An error occurred in ProxyListener of '{}' [{}, priority={}]: {}",
-                        entry.getKey().getPluginInfo().getId(),
-                        entry.getValue().getClass().getSimpleName(), entry.getKey().getPriority(),
-                        ex.getMessage(),
-                        ex
-                );
-                res = errVal;
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    /**
+     * Returns whether the rest of the chain has to be skipped
+     * after the listener has decided the request
+     */
+    private boolean shortCircuits(ProxyListenerEntry entry, ProxyRequest request, ProxyListenerHook hook) {
+        if (!request.isBlocked()) return false;
+        entry.getInfo().recordDecision(hook);
+        LOGGER.debug(
+                "Request to '{}' has been decided by '{}' [{}]",
+                request.getHost(), entry.getInfo().getPluginInfo().getId(), entry.getListener().getClass().getSimpleName()
+        );
+        final DispatchMode mode = entry.getDispatchMode();
+        return (mode != null ? mode : dispatchMode) == DispatchMode.SHORT_CIRCUIT;
+    }
+
+    private static String host(FullAddress address) {
+        return address != null ? address.getHost() : null;
+    }
+
+    private static void logError(ProxyListenerEntry entry, Throwable ex) {
+        LOGGER.error(
+                "An error occurred in ProxyListener of '{}' [{}, priority={}]: {}",
+                entry.getInfo().getPluginInfo().getId(),
+                entry.getListener().getClass().getSimpleName(), entry.getInfo().getPriority(),
+                ex.getMessage(),
+                ex
+        );
+    }
+
+    private static class Dispatch {
+
+        private final ProxyListenerEntry[][] tables;
+        private final ProxyListenerEntry[] clientToProxyChain;
+        private final DomainIndex index;
+
+        private Dispatch(ProxyListenerEntry[][] tables, ProxyListenerEntry[] clientToProxyChain, DomainIndex index) {
+            this.tables = tables;
+            this.clientToProxyChain = clientToProxyChain;
+            this.index = index;
+        }
+
+        private ProxyListenerEntry[] table(ProxyListenerHook hook) {
+            return tables[hook.ordinal()];
+        }
+
+        /**
+         * Returns mask of listeners subscribed to the host,
+         * the mask is cached by messages carrying the {@link HostMatch} of their connection
+         */
+        private long[] match(String host, Object message) {
+            if (index == null) return null;
+            if (message instanceof HostMatch.Holder) {
+                final HostMatch match = ((HostMatch.Holder) message).getHostMatch();
+                if (match != null) return match.get(index, host);
             }
-            if(res != defObj) result = res;
+            return index.match(host);
         }
-        return result;
     }
 }
@@ -0,0 +1,173 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.listener;
+
+import io.github.krlvm.powertunnel.sdk.types.FullAddress;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Bounded cache of listener decisions that are stable per address
+ * (chunk size, full chunking, fragmentation, MITM permission and SNI)
+ *
+ * The cache is split into independently locked segments,
+ * each segment evicts the least recently used entries when it is full
+ * and entries expire after the given time to live
+ */
+public class DecisionCache {
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+    private final long ttl;
+
+    public DecisionCache(int maxSize, long ttl, TimeUnit unit) {
+        final int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        for (int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(segmentSize);
+        this.ttl = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns decisions cached for the address,
+     * creates an empty entry if there's no valid entry yet
+     *
+     * @param address address
+     * @return cached decisions
+     */
+    public Decisions get(FullAddress address) {
+        final Segment segment = segment(address);
+        final long now = System.nanoTime();
+        synchronized (segment) {
+            Decisions decisions = segment.get(address);
+            if (decisions == null || decisions.expiresAt - now < 0) {
+                decisions = new Decisions(now + ttl);
+                segment.put(address, decisions);
+            }
+            return decisions;
+        }
+    }
+
+    /**
+     * Removes all cached decisions
+     */
+    public void invalidate() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes decisions cached for the host on any port
+     *
+     * @param host host
+     */
+    public void invalidate(String host) {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                final Iterator<FullAddress> iterator = segment.keySet().iterator();
+                while (iterator.hasNext()) {
+                    if (iterator.next().getHost().equalsIgnoreCase(host)) iterator.remove();
+                }
+            }
+        }
+    }
+
+    private Segment segment(FullAddress address) {
+        final int hash = address.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private static class Segment extends LinkedHashMap<FullAddress, Decisions> {
+
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<FullAddress, Decisions> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    /**
+     * Decisions cached for an address,
+     * each of them is computed on first access
+     */
+    public static class Decisions {
+
+        private final long expiresAt;
+
+        private volatile Integer chunkSize;
+        private volatile Boolean fullChunking;
+        private volatile Object fragmentation;
+        private volatile Boolean mitmAllowed;
+        private volatile Object sni;
+
+        private Decisions(long expiresAt) {
+            this.expiresAt = expiresAt;
+        }
+
+        public int getChunkSize(Supplier<Integer> supplier) {
+            Integer value = chunkSize;
+            if (value == null) chunkSize = value = supplier.get();
+            return value;
+        }
+
+        public boolean isFullChunking(Supplier<Boolean> supplier) {
+            Boolean value = fullChunking;
+            if (value == null) fullChunking = value = supplier.get();
+            return value;
+        }
+
+        public Object getFragmentation(Supplier<Object> supplier) {
+            Object value = fragmentation;
+            if (value == null) {
+                value = supplier.get();
+                fragmentation = value == null ? Void.TYPE : value;
+                return value;
+            }
+            return value == Void.TYPE ? null : value;
+        }
+
+        public boolean isMITMAllowed(Supplier<Boolean> supplier) {
+            Boolean value = mitmAllowed;
+            if (value == null) mitmAllowed = value = supplier.get();
+            return value;
+        }
+
+        public Object getSNI(Supplier<Object> supplier) {
+            Object value = sni;
+            if (value == null) {
+                value = supplier.get();
+                // null SNI is a valid decision, it is stored as Void.TYPE
+                sni = value == null ? Void.TYPE : value;
+                return value;
+            }
+            return value == Void.TYPE ? null : value;
+        }
+    }
+}
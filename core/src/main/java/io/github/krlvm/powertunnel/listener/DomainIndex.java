@@ -0,0 +1,140 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.listener;
+
+import io.github.krlvm.powertunnel.sdk.proxy.HostFilter;
+
+/**
+ * Suffix trie of host filters of all listeners,
+ * host labels are stored from the top-level domain to the leftmost label
+ *
+ * Matching walks the host once from its end and returns a bit mask
+ * of listeners (by their filter index) subscribed to the host
+ */
+public class DomainIndex {
+
+    private final Node root = new Node(null);
+    private final int words;
+
+    public DomainIndex(HostFilter[] filters) {
+        this.words = Math.max(1, (filters.length + 63) >>> 6);
+        for (int i = 0; i < filters.length; i++) {
+            for (String host : filters[i].getExactHosts()) {
+                final Node node = insert(host);
+                node.exact = set(node.exact, i);
+            }
+            for (String host : filters[i].getSuffixes()) {
+                final Node node = insert(host);
+                node.suffix = set(node.suffix, i);
+            }
+            for (String host : filters[i].getWildcards()) {
+                final Node node = insert(host);
+                node.wildcard = set(node.wildcard, i);
+            }
+        }
+    }
+
+    private Node insert(String host) {
+        Node node = root;
+        int end = host.length();
+        while (end > 0) {
+            final int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.child(host, start, end, true);
+            end = start - 1;
+        }
+        return node;
+    }
+
+    private long[] set(long[] mask, int index) {
+        if (mask == null) mask = new long[words];
+        mask[index >>> 6] |= 1L << index;
+        return mask;
+    }
+
+    /**
+     * Returns mask of listeners subscribed to the host
+     *
+     * @param host host
+     * @return mask of listeners or null if there are no subscribed listeners
+     */
+    public long[] match(String host) {
+        if (host == null || host.isEmpty()) return null;
+
+        int end = host.length();
+        if (host.charAt(end - 1) == '.') end--;
+
+        long[] result = null;
+        Node node = root;
+        while (end > 0) {
+            final int start = host.lastIndexOf('.', end - 1) + 1;
+            node = node.child(host, start, end, false);
+            if (node == null) break;
+            if (start == 0) {
+                result = or(result, node.exact);
+                result = or(result, node.suffix);
+            } else {
+                result = or(result, node.suffix);
+                result = or(result, node.wildcard);
+            }
+            end = start - 1;
+        }
+        return result;
+    }
+
+    private long[] or(long[] result, long[] mask) {
+        if (mask == null) return result;
+        if (result == null) result = new long[words];
+        for (int i = 0; i < words; i++) result[i] |= mask[i];
+        return result;
+    }
+
+    private static class Node {
+
+        private final String label;
+        private Node[] children;
+
+        private long[] exact, suffix, wildcard;
+
+        private Node(String label) {
+            this.label = label;
+        }
+
+        private Node child(String host, int start, int end, boolean create) {
+            final int length = end - start;
+            if (children != null) {
+                for (Node child : children) {
+                    if (child.label.length() == length && host.regionMatches(true, start, child.label, 0, length)) {
+                        return child;
+                    }
+                }
+            }
+            if (!create) return null;
+
+            final Node child = new Node(host.substring(start, end));
+            if (children == null) {
+                children = new Node[] { child };
+            } else {
+                final Node[] arr = new Node[children.length + 1];
+                System.arraycopy(children, 0, arr, 0, children.length);
+                arr[children.length] = child;
+                children = arr;
+            }
+            return child;
+        }
+    }
+}
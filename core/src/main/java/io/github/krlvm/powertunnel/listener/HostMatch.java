@@ -0,0 +1,61 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.listener;
+
+/**
+ * Mask of listeners subscribed to the host of a connection,
+ * kept by the connection so the {@link DomainIndex} is walked once
+ * and not for every message and chunk
+ *
+ * The mask is matched again when the host or the registered listeners change
+ */
+public class HostMatch {
+
+    private volatile Snapshot snapshot;
+
+    long[] get(DomainIndex index, String host) {
+        final Snapshot snapshot = this.snapshot;
+        if (snapshot != null && snapshot.index == index && (snapshot.host == host || (host != null && host.equals(snapshot.host)))) {
+            return snapshot.mask;
+        }
+        final long[] mask = index.match(host);
+        this.snapshot = new Snapshot(index, host, mask);
+        return mask;
+    }
+
+    /**
+     * Message carrying the host match of its connection
+     */
+    public interface Holder {
+        HostMatch getHostMatch();
+    }
+
+    private static class Snapshot {
+
+        private final DomainIndex index;
+        private final String host;
+        // never modified, shared by all the listener calls of the connection
+        private final long[] mask;
+
+        private Snapshot(DomainIndex index, String host, long[] mask) {
+            this.index = index;
+            this.host = host;
+            this.mask = mask;
+        }
+    }
+}
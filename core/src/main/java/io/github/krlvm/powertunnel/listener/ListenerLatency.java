@@ -0,0 +1,95 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.listener;
+
+import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
+
+/**
+ * Snapshot of latency statistics of a proxy listener hook
+ */
+public class ListenerLatency {
+
+    private final String pluginId;
+    private final String listenerName;
+    private final ProxyListenerHook hook;
+
+    private final long count;
+    private final long decisions;
+    private final long p50, p99, max;
+
+    public ListenerLatency(ProxyListenerInfo info, ProxyListener listener, ProxyListenerHook hook, LatencyHistogram histogram) {
+        this.pluginId = info.getPluginInfo().getId();
+        this.listenerName = listener.getClass().getSimpleName();
+        this.hook = hook;
+        this.count = histogram.getCount();
+        this.decisions = info.getDecisions(hook);
+        this.p50 = histogram.getPercentile(50);
+        this.p99 = histogram.getPercentile(99);
+        this.max = histogram.getMax();
+    }
+
+    public String getPluginId() {
+        return pluginId;
+    }
+
+    public String getListenerName() {
+        return listenerName;
+    }
+
+    public ProxyListenerHook getHook() {
+        return hook;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    /**
+     * Returns how many requests the listener has decided
+     * (blocked or set a response) in the hook
+     *
+     * @return number of decided requests
+     */
+    public long getDecisions() {
+        return decisions;
+    }
+
+    /**
+     * Returns median latency in nanoseconds
+     * @return median latency
+     */
+    public long getP50() {
+        return p50;
+    }
+
+    /**
+     * Returns 99th percentile latency in nanoseconds
+     * @return 99th percentile latency
+     */
+    public long getP99() {
+        return p99;
+    }
+
+    /**
+     * Returns maximum latency in nanoseconds
+     * @return maximum latency
+     */
+    public long getMax() {
+        return max;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.listener;
+
+import io.github.krlvm.powertunnel.sdk.proxy.DispatchMode;
+import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
+
+public class ProxyListenerEntry {
+
+    private final ProxyListenerInfo info;
+    private final ProxyListener listener;
+    private final int filterIndex;
+    private final int hooks;
+    private final DispatchMode dispatchMode;
+
+    public ProxyListenerEntry(ProxyListenerInfo info, ProxyListener listener, int filterIndex) {
+        this.info = info;
+        this.listener = listener;
+        this.filterIndex = filterIndex;
+
+        int hooks = 0;
+        for (ProxyListenerHook hook : ProxyListenerHook.values()) {
+            if (hook.isImplementedBy(listener)) hooks |= 1 << hook.ordinal();
+        }
+        this.hooks = hooks;
+        this.dispatchMode = listener.getDispatchMode();
+    }
+
+    public ProxyListenerInfo getInfo() {
+        return info;
+    }
+
+    public ProxyListener getListener() {
+        return listener;
+    }
+
+    /**
+     * Returns dispatch mode declared by the listener
+     * or null if the listener follows the server dispatch mode
+     *
+     * @return dispatch mode
+     */
+    public DispatchMode getDispatchMode() {
+        return dispatchMode;
+    }
+
+    /**
+     * Returns whether the listener handles the hook
+     *
+     * @param hook proxy listener hook
+     * @return whether the listener has to be called for the hook
+     */
+    public boolean implementsHook(ProxyListenerHook hook) {
+        return (hooks & (1 << hook.ordinal())) != 0;
+    }
+
+    /**
+     * Returns index of the listener in the {@link DomainIndex}
+     * or -1 if the listener is subscribed to all hosts
+     *
+     * @return domain index position
+     */
+    public int getFilterIndex() {
+        return filterIndex;
+    }
+
+    /**
+     * Returns whether the listener is subscribed to a host
+     *
+     * @param hosts listeners matched by {@link DomainIndex#match(String)}
+     * @return whether the listener has to be called
+     */
+    public boolean accepts(long[] hosts) {
+        return filterIndex < 0 || (hosts != null && (hosts[filterIndex >>> 6] & (1L << filterIndex)) != 0);
+    }
+}
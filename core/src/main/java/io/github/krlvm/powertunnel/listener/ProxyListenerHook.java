@@ -0,0 +1,79 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.listener;
+
+import io.github.krlvm.powertunnel.sdk.http.ProxyChunk;
+import io.github.krlvm.powertunnel.sdk.http.ProxyRequest;
+import io.github.krlvm.powertunnel.sdk.http.ProxyResponse;
+import io.github.krlvm.powertunnel.sdk.proxy.AsyncProxyAdapter;
+import io.github.krlvm.powertunnel.sdk.proxy.DNSRequest;
+import io.github.krlvm.powertunnel.sdk.proxy.ProxyAdapter;
+import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
+import io.github.krlvm.powertunnel.sdk.types.FullAddress;
+
+/**
+ * Hooks of {@link ProxyListener} the core dispatches events to
+ */
+public enum ProxyListenerHook {
+
+    CLIENT_TO_PROXY_REQUEST("onClientToProxyRequest", ProxyRequest.class),
+    CLIENT_TO_PROXY_REQUEST_ASYNC("onClientToProxyRequestAsync", ProxyRequest.class),
+    PROXY_TO_SERVER_REQUEST("onProxyToServerRequest", ProxyRequest.class),
+    SERVER_TO_PROXY_RESPONSE("onServerToProxyResponse", ProxyResponse.class),
+    PROXY_TO_CLIENT_RESPONSE("onProxyToClientResponse", ProxyResponse.class),
+    REQUEST_CHUNK("onRequestChunk", ProxyChunk.class),
+    RESPONSE_CHUNK("onResponseChunk", ProxyChunk.class),
+    RESOLUTION_REQUEST("onResolutionRequest", DNSRequest.class),
+    GET_CHUNK_SIZE("onGetChunkSize", FullAddress.class),
+    FULL_CHUNKING("isFullChunking", FullAddress.class),
+    GET_FRAGMENTATION("onGetFragmentation", FullAddress.class),
+    MITM_ALLOWED("isMITMAllowed", FullAddress.class),
+    GET_SNI("onGetSNI", String.class);
+
+    private final String methodName;
+    private final Class<?>[] parameterTypes;
+
+    ProxyListenerHook(String methodName, Class<?>... parameterTypes) {
+        this.methodName = methodName;
+        this.parameterTypes = parameterTypes;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+
+    /**
+     * Returns whether the listener handles this hook,
+     * listeners extending {@link ProxyAdapter} or {@link AsyncProxyAdapter}
+     * handle only the hooks they override, default hooks of {@link ProxyListener}
+     * are handled only when overridden
+     *
+     * @param listener proxy listener
+     * @return whether the listener has to be called for this hook
+     */
+    public boolean isImplementedBy(ProxyListener listener) {
+        try {
+            final Class<?> declaringClass = listener.getClass().getMethod(methodName, parameterTypes).getDeclaringClass();
+            return declaringClass != ProxyAdapter.class && declaringClass != AsyncProxyAdapter.class
+                    && declaringClass != ProxyListener.class;
+        } catch (NoSuchMethodException ex) {
+            // asynchronous hooks are not declared by synchronous listeners
+            return false;
+        }
+    }
+}
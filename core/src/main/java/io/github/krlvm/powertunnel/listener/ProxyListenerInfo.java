@@ -18,15 +18,28 @@
 package io.github.krlvm.powertunnel.listener;
 
 import io.github.krlvm.powertunnel.sdk.plugin.PluginInfo;
+import io.github.krlvm.powertunnel.sdk.proxy.HostFilter;
+
+import java.util.concurrent.atomic.AtomicLongArray;
 
 public class ProxyListenerInfo {
 
     private final PluginInfo pluginInfo;
     private final int priority;
+    private final HostFilter hostFilter;
+
+    private final LatencyHistogram[] latencies = new LatencyHistogram[ProxyListenerHook.values().length];
+    private final AtomicLongArray decisions = new AtomicLongArray(ProxyListenerHook.values().length);
 
     public ProxyListenerInfo(PluginInfo pluginInfo, int priority) {
+        this(pluginInfo, priority, null);
+    }
+
+    public ProxyListenerInfo(PluginInfo pluginInfo, int priority, HostFilter hostFilter) {
         this.pluginInfo = pluginInfo;
         this.priority = priority;
+        this.hostFilter = hostFilter;
+        for (int i = 0; i < latencies.length; i++) latencies[i] = new LatencyHistogram();
     }
 
     public PluginInfo getPluginInfo() {
@@ -36,4 +49,44 @@ public class ProxyListenerInfo {
     public int getPriority() {
         return priority;
     }
+
+    /**
+     * Returns hosts the listener is subscribed to
+     * or null if the listener is subscribed to all hosts
+     *
+     * @return host filter
+     */
+    public HostFilter getHostFilter() {
+        return hostFilter;
+    }
+
+    /**
+     * Returns latency histogram of the listener for the hook
+     *
+     * @param hook proxy listener hook
+     * @return latency histogram
+     */
+    public LatencyHistogram getLatency(ProxyListenerHook hook) {
+        return latencies[hook.ordinal()];
+    }
+
+    /**
+     * Records that the listener has decided a request
+     * (blocked it or set a response) in the hook
+     *
+     * @param hook proxy listener hook
+     */
+    public void recordDecision(ProxyListenerHook hook) {
+        decisions.incrementAndGet(hook.ordinal());
+    }
+
+    /**
+     * Returns how many requests the listener has decided in the hook
+     *
+     * @param hook proxy listener hook
+     * @return number of decided requests
+     */
+    public long getDecisions(ProxyListenerHook hook) {
+        return decisions.get(hook.ordinal());
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.listener;
+
+import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Copy-on-write registry of proxy listeners
+ *
+ * Registrations are kept in an array sorted by priority, listeners
+ * with the same priority are kept in registration order.
+ * Each change publishes a new array, so readers never take locks.
+ */
+public class ProxyListenerRegistry {
+
+    private static final Registration[] EMPTY = new Registration[0];
+
+    private volatile Registration[] registrations = EMPTY;
+    private final Map<ProxyListener, Registration> index = new IdentityHashMap<>();
+
+    /**
+     * Registers proxy listener
+     *
+     * @param info listener info
+     * @param listener proxy listener
+     * @throws IllegalStateException if the listener is already registered
+     */
+    public synchronized void register(ProxyListenerInfo info, ProxyListener listener) {
+        if (index.containsKey(listener)) throw new IllegalStateException("Proxy Listener is already registered");
+
+        final Registration registration = new Registration(info, listener);
+        final Registration[] current = this.registrations;
+
+        // insert after all the listeners with the same or higher priority
+        int position = current.length;
+        while (position > 0 && current[position - 1].info.getPriority() > info.getPriority()) position--;
+
+        final Registration[] updated = new Registration[current.length + 1];
+        System.arraycopy(current, 0, updated, 0, position);
+        updated[position] = registration;
+        System.arraycopy(current, position, updated, position + 1, current.length - position);
+
+        index.put(listener, registration);
+        this.registrations = updated;
+    }
+
+    /**
+     * Unregisters proxy listener
+     *
+     * @param listener registered proxy listener
+     * @throws IllegalStateException if the listener is not registered
+     */
+    public synchronized void unregister(ProxyListener listener) {
+        final Registration registration = index.remove(listener);
+        if (registration == null) throw new IllegalStateException("Proxy Listener is not registered");
+
+        final Registration[] current = this.registrations;
+        final Registration[] updated = new Registration[current.length - 1];
+        int i = 0;
+        for (Registration r : current) {
+            if (r != registration) updated[i++] = r;
+        }
+        this.registrations = updated;
+    }
+
+    /**
+     * Removes all registered listeners
+     */
+    public synchronized void clear() {
+        index.clear();
+        this.registrations = EMPTY;
+    }
+
+    /**
+     * Returns registered listeners sorted by priority,
+     * the returned array must not be modified
+     *
+     * @return registered listeners
+     */
+    public Registration[] snapshot() {
+        return registrations;
+    }
+
+    public static final class Registration {
+
+        private final ProxyListenerInfo info;
+        private final ProxyListener listener;
+
+        private Registration(ProxyListenerInfo info, ProxyListener listener) {
+            this.info = info;
+            this.listener = listener;
+        }
+
+        public ProxyListenerInfo getInfo() {
+            return info;
+        }
+
+        public ProxyListener getListener() {
+            return listener;
+        }
+    }
+}
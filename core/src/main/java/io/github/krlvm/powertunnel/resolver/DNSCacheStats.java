@@ -0,0 +1,90 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+/**
+ * Snapshot of DNS cache statistics
+ */
+public class DNSCacheStats {
+
+    private final long hits;
+    private final long negativeHits;
+    private final long misses;
+    private final long prefetches;
+    private final long listenerHits;
+    private final int size;
+
+    public DNSCacheStats(long hits, long negativeHits, long misses, long prefetches, long listenerHits, int size) {
+        this.hits = hits;
+        this.negativeHits = negativeHits;
+        this.misses = misses;
+        this.prefetches = prefetches;
+        this.listenerHits = listenerHits;
+        this.size = size;
+    }
+
+    /**
+     * Returns how many lookups have been answered with cached addresses
+     *
+     * @return number of hits
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * Returns how many lookups have been answered with a cached failure
+     *
+     * @return number of negative hits
+     */
+    public long getNegativeHits() {
+        return negativeHits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * Returns how many entries have been refreshed before they expired
+     *
+     * @return number of prefetches
+     */
+    public long getPrefetches() {
+        return prefetches;
+    }
+
+    /**
+     * Returns how many lookups have been answered with a cached response of proxy listeners,
+     * these lookups are not counted as hits or misses
+     *
+     * @return number of listener response hits
+     */
+    public long getListenerHits() {
+        return listenerHits;
+    }
+
+    /**
+     * Returns number of cached hosts
+     *
+     * @return number of cached hosts
+     */
+    public int getSize() {
+        return size;
+    }
+}
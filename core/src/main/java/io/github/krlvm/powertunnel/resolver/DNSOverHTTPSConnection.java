@@ -0,0 +1,119 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.http.*;
+import io.netty.util.concurrent.Promise;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Queue;
+
+/**
+ * DNS over HTTPS connection (RFC 8484),
+ * queries are pipelined over a persistent HTTP/1.1 connection and answered in order
+ */
+class DNSOverHTTPSConnection extends EncryptedDNSConnection {
+
+    private static final String DNS_MESSAGE = "application/dns-message";
+    private static final int MAX_RESPONSE_LENGTH = 0xFFFF;
+
+    private final String authority;
+    private final String path;
+    private final Queue<Query> pending = new ArrayDeque<>();
+
+    /**
+     * @param loop event loop
+     * @param authority value of the Host header
+     * @param path path of the DoH endpoint
+     */
+    DNSOverHTTPSConnection(EventLoop loop, String authority, String path) {
+        super(loop);
+        this.authority = authority;
+        this.path = path;
+    }
+
+    @Override
+    protected void initPipeline(ChannelPipeline pipeline) {
+        pipeline.addLast(new HttpClientCodec(), new HttpObjectAggregator(MAX_RESPONSE_LENGTH));
+    }
+
+    @Override
+    protected void send(Channel channel, String host, int type, Promise<DNSWireFormat.Response> promise) {
+        // ID should be 0 to keep responses cacheable by HTTP caches
+        final ByteBuf query = DNSWireFormat.encodeQuery(channel.alloc(), 0, host, type);
+        final FullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, path, query);
+        request.headers()
+                .set(HttpHeaderNames.HOST, authority)
+                .set(HttpHeaderNames.CONTENT_TYPE, DNS_MESSAGE)
+                .set(HttpHeaderNames.ACCEPT, DNS_MESSAGE)
+                .set(HttpHeaderNames.CONTENT_LENGTH, query.readableBytes());
+
+        // timed out queries stay in the queue, responses are matched by their order
+        pending.add(new Query(host, promise));
+        channel.writeAndFlush(request).addListener(future -> {
+            if (!future.isSuccess()) promise.tryFailure(future.cause());
+        });
+    }
+
+    @Override
+    protected void failPending(Throwable cause) {
+        Query query;
+        while ((query = pending.poll()) != null) {
+            query.promise.tryFailure(cause);
+        }
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        final FullHttpResponse response = (FullHttpResponse) msg;
+        try {
+            final Query query = pending.poll();
+            if (query == null) return;
+            if (!response.status().equals(HttpResponseStatus.OK)) {
+                query.promise.tryFailure(new IOException("DoH server responded with " + response.status()));
+                return;
+            }
+            // a malformed response fails only its own query
+            try {
+                query.promise.trySuccess(DNSWireFormat.decodeResponse(response.content(), query.host));
+            } catch (CorruptedFrameException ex) {
+                query.promise.tryFailure(ex);
+            }
+        } finally {
+            response.release();
+        }
+    }
+
+    private static class Query {
+
+        private final String host;
+        private final Promise<DNSWireFormat.Response> promise;
+
+        private Query(String host, Promise<DNSWireFormat.Response> promise) {
+            this.host = host;
+            this.promise = promise;
+        }
+    }
+}
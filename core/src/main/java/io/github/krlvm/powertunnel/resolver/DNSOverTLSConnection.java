@@ -0,0 +1,116 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.collection.IntObjectHashMap;
+import io.netty.util.collection.IntObjectMap;
+import io.netty.util.concurrent.Promise;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * DNS over TLS connection (RFC 7858),
+ * queries are multiplexed by their IDs and can be answered out of order
+ */
+class DNSOverTLSConnection extends EncryptedDNSConnection {
+
+    private static final int MAX_QUERIES = 0xFFFF;
+
+    private final IntObjectMap<Query> pending = new IntObjectHashMap<>();
+    private int nextId = ThreadLocalRandom.current().nextInt(0x10000);
+
+    DNSOverTLSConnection(EventLoop loop) {
+        super(loop);
+    }
+
+    @Override
+    protected void initPipeline(ChannelPipeline pipeline) {
+        // messages are prefixed with two-byte length
+        pipeline.addLast(
+                new LengthFieldBasedFrameDecoder(0xFFFF, 0, 2, 0, 2),
+                new LengthFieldPrepender(2)
+        );
+    }
+
+    @Override
+    protected void send(Channel channel, String host, int type, Promise<DNSWireFormat.Response> promise) {
+        if (pending.size() >= MAX_QUERIES) {
+            promise.tryFailure(new IOException("Too many DNS queries in flight"));
+            return;
+        }
+        while (pending.containsKey(nextId)) nextId = (nextId + 1) & 0xFFFF;
+        final int id = nextId;
+        nextId = (nextId + 1) & 0xFFFF;
+
+        final ByteBuf query = DNSWireFormat.encodeQuery(channel.alloc(), id, host, type);
+        final Query pendingQuery = new Query(host, promise);
+        pending.put(id, pendingQuery);
+        // the ID can be reused once the query has been answered or timed out
+        promise.addListener(future -> pending.remove(id, pendingQuery));
+        channel.writeAndFlush(query).addListener(future -> {
+            if (!future.isSuccess()) promise.tryFailure(future.cause());
+        });
+    }
+
+    @Override
+    protected void failPending(Throwable cause) {
+        for (Query query : pending.values().toArray(new Query[0])) {
+            query.promise.tryFailure(cause);
+        }
+        pending.clear();
+    }
+
+    @Override
+    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+        final ByteBuf buf = (ByteBuf) msg;
+        try {
+            if (buf.readableBytes() < 2) return;
+            final Query query = pending.get(buf.getUnsignedShort(buf.readerIndex()));
+            // late answers of timed out queries are dropped
+            if (query == null) return;
+            // frames are delimited by their length, a malformed response fails only its own query
+            try {
+                query.promise.trySuccess(DNSWireFormat.decodeResponse(buf, query.host));
+            } catch (CorruptedFrameException ex) {
+                query.promise.tryFailure(ex);
+            }
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static class Query {
+
+        private final String host;
+        private final Promise<DNSWireFormat.Response> promise;
+
+        private Query(String host, Promise<DNSWireFormat.Response> promise) {
+            this.host = host;
+            this.promise = promise;
+        }
+    }
+}
@@ -0,0 +1,171 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.handler.codec.CorruptedFrameException;
+
+import java.net.IDN;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Encoder of DNS queries and decoder of address records of DNS responses (RFC 1035),
+ * only the parts needed to resolve A and AAAA records are supported
+ */
+final class DNSWireFormat {
+
+    static final int TYPE_A = 1;
+    static final int TYPE_AAAA = 28;
+
+    static final int RCODE_NOERROR = 0;
+    static final int RCODE_NXDOMAIN = 3;
+
+    private static final int CLASS_IN = 1;
+    private static final int FLAG_RESPONSE = 0x8000;
+    private static final int FLAG_RECURSION_DESIRED = 0x0100;
+    private static final int HEADER_LENGTH = 12;
+    private static final int MAX_NAME_LENGTH = 255;
+    private static final int MAX_LABEL_LENGTH = 63;
+
+    private DNSWireFormat() {}
+
+    /**
+     * Encodes a recursive query of one question
+     *
+     * @param alloc allocator
+     * @param id query ID
+     * @param host host
+     * @param type record type
+     * @return encoded query
+     * @throws IllegalArgumentException if the host is not a valid domain name
+     */
+    static ByteBuf encodeQuery(ByteBufAllocator alloc, int id, String host, int type) {
+        final byte[] name = encodeName(host);
+        final ByteBuf buf = alloc.buffer(HEADER_LENGTH + name.length + 4);
+        buf.writeShort(id);
+        buf.writeShort(FLAG_RECURSION_DESIRED);
+        buf.writeShort(1); // questions
+        buf.writeShort(0); // answers
+        buf.writeShort(0); // authority records
+        buf.writeShort(0); // additional records
+        buf.writeBytes(name);
+        buf.writeShort(type);
+        buf.writeShort(CLASS_IN);
+        return buf;
+    }
+
+    private static byte[] encodeName(String host) {
+        String ascii = IDN.toASCII(host);
+        if (ascii.endsWith(".")) ascii = ascii.substring(0, ascii.length() - 1);
+        final byte[] bytes = ascii.getBytes(StandardCharsets.US_ASCII);
+        if (bytes.length == 0 || bytes.length + 2 > MAX_NAME_LENGTH) throw new IllegalArgumentException("Invalid domain name: '" + host + "'");
+
+        final byte[] name = new byte[bytes.length + 2];
+        int labelStart = 0;
+        for (int i = 0; i <= bytes.length; i++) {
+            if (i < bytes.length && bytes[i] != '.') continue;
+            final int length = i - labelStart;
+            if (length == 0 || length > MAX_LABEL_LENGTH) throw new IllegalArgumentException("Invalid domain name: '" + host + "'");
+            name[labelStart] = (byte) length;
+            System.arraycopy(bytes, labelStart, name, labelStart + 1, length);
+            labelStart = i + 1;
+        }
+        return name;
+    }
+
+    /**
+     * Decodes a response, address records are collected from the answer section
+     *
+     * @param buf response
+     * @param host resolved host, used as host name of the addresses
+     * @return decoded response
+     * @throws CorruptedFrameException if the response is malformed
+     */
+    static Response decodeResponse(ByteBuf buf, String host) {
+        try {
+            final int id = buf.readUnsignedShort();
+            final int flags = buf.readUnsignedShort();
+            if ((flags & FLAG_RESPONSE) == 0) throw new CorruptedFrameException("DNS message is not a response");
+            final int questions = buf.readUnsignedShort();
+            final int answers = buf.readUnsignedShort();
+            buf.skipBytes(4); // authority and additional records are not used
+
+            for (int i = 0; i < questions; i++) {
+                skipName(buf);
+                buf.skipBytes(4);
+            }
+
+            final List<InetAddress> addresses = new ArrayList<>(answers);
+            long ttl = Long.MAX_VALUE;
+            for (int i = 0; i < answers; i++) {
+                skipName(buf);
+                final int type = buf.readUnsignedShort();
+                final int recordClass = buf.readUnsignedShort();
+                final long recordTtl = buf.readUnsignedInt();
+                final int length = buf.readUnsignedShort();
+                if (recordClass == CLASS_IN && ((type == TYPE_A && length == 4) || (type == TYPE_AAAA && length == 16))) {
+                    final byte[] address = new byte[length];
+                    buf.readBytes(address);
+                    addresses.add(InetAddress.getByAddress(host, address));
+                    ttl = Math.min(ttl, recordTtl);
+                } else {
+                    // CNAME and other records, the address records of the chain follow them
+                    buf.skipBytes(length);
+                }
+            }
+            return new Response(id, flags & 0xF, addresses, addresses.isEmpty() ? 0 : ttl);
+        } catch (IndexOutOfBoundsException | UnknownHostException ex) {
+            throw new CorruptedFrameException("Malformed DNS response", ex);
+        }
+    }
+
+    private static void skipName(ByteBuf buf) {
+        while (true) {
+            final int length = buf.readUnsignedByte();
+            if (length == 0) return;
+            if ((length & 0xC0) == 0xC0) {
+                // compression pointer ends the name
+                buf.skipBytes(1);
+                return;
+            }
+            if ((length & 0xC0) != 0) throw new CorruptedFrameException("Unsupported DNS label type");
+            buf.skipBytes(length);
+        }
+    }
+
+    static class Response {
+
+        final int id;
+        final int rcode;
+        final List<InetAddress> addresses;
+        // the lowest TTL of the address records in seconds
+        final long ttl;
+
+        Response(int id, int rcode, List<InetAddress> addresses, long ttl) {
+            this.id = id;
+            this.rcode = rcode;
+            this.addresses = addresses;
+            this.ttl = ttl;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.*;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import java.net.InetSocketAddress;
+import java.nio.channels.ClosedChannelException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Persistent TLS connection to an encrypted DNS server carrying many queries at once,
+ * queries sent before the handshake completes are written when it does
+ *
+ * The connection is confined to the event loop it was created on,
+ * all methods have to be called from the event loop
+ */
+abstract class EncryptedDNSConnection extends ChannelInboundHandlerAdapter {
+
+    private static final int CONNECT_TIMEOUT_MILLIS = 5000;
+    private static final long QUERY_TIMEOUT_MILLIS = 5000;
+    private static final int IDLE_TIMEOUT_SECONDS = 60;
+
+    private final EventLoop loop;
+    private final Promise<Channel> ready;
+    private boolean closed = false;
+
+    EncryptedDNSConnection(EventLoop loop) {
+        this.loop = loop;
+        this.ready = loop.newPromise();
+    }
+
+    /**
+     * Connects to the server
+     *
+     * @param address server address
+     * @param sslContext TLS context
+     * @param serverName name the server certificate is verified against
+     */
+    void connect(InetSocketAddress address, SslContext sslContext, String serverName) {
+        final ChannelFuture connect = new Bootstrap()
+                .group(loop)
+                .channel(NioSocketChannel.class)
+                .option(ChannelOption.TCP_NODELAY, true)
+                .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, CONNECT_TIMEOUT_MILLIS)
+                .handler(new ChannelInitializer<Channel>() {
+                    @Override
+                    protected void initChannel(Channel ch) {
+                        final SslHandler ssl = sslContext.newHandler(ch.alloc(), serverName, address.getPort());
+                        final SSLEngine engine = ssl.engine();
+                        final SSLParameters parameters = engine.getSSLParameters();
+                        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+                        engine.setSSLParameters(parameters);
+
+                        ch.pipeline().addLast(ssl, new IdleStateHandler(0, 0, IDLE_TIMEOUT_SECONDS));
+                        initPipeline(ch.pipeline());
+                        ch.pipeline().addLast(EncryptedDNSConnection.this);
+                    }
+                })
+                .connect(address);
+        connect.addListener((ChannelFuture future) -> {
+            if (!future.isSuccess()) {
+                fail(future.cause());
+                return;
+            }
+            future.channel().pipeline().get(SslHandler.class).handshakeFuture().addListener(handshake -> {
+                if (handshake.isSuccess()) {
+                    ready.trySuccess(future.channel());
+                } else {
+                    fail(handshake.cause());
+                }
+            });
+        });
+    }
+
+    /**
+     * Sends a query
+     *
+     * @param host host
+     * @param type record type
+     * @return future completed with the response
+     */
+    Future<DNSWireFormat.Response> query(String host, int type) {
+        final Promise<DNSWireFormat.Response> promise = loop.newPromise();
+        if (closed) return promise.setFailure(new ClosedChannelException());
+
+        ready.addListener((Future<Channel> future) -> {
+            if (!future.isSuccess()) {
+                promise.tryFailure(future.cause());
+                return;
+            }
+            try {
+                send(future.getNow(), host, type, promise);
+            } catch (IllegalArgumentException ex) {
+                promise.tryFailure(ex);
+            }
+        });
+        final Future<?> timeout = loop.schedule(
+                () -> promise.tryFailure(new TimeoutException("DNS query timed out")),
+                QUERY_TIMEOUT_MILLIS, TimeUnit.MILLISECONDS
+        );
+        promise.addListener(future -> timeout.cancel(false));
+        return promise;
+    }
+
+    /**
+     * Returns future completed when the connection is established,
+     * failed when the connection or the TLS handshake fails
+     *
+     * @return future of the channel
+     */
+    Future<Channel> established() {
+        return ready;
+    }
+
+    /**
+     * Returns whether new queries can be sent over the connection
+     *
+     * @return whether the connection is not closed
+     */
+    boolean isOpen() {
+        // writes to a channel closed by the server fail before it is reported inactive
+        return !closed && (!ready.isSuccess() || ready.getNow().isActive());
+    }
+
+    void close() {
+        fail(new ClosedChannelException());
+    }
+
+    protected abstract void initPipeline(ChannelPipeline pipeline);
+
+    protected abstract void send(Channel channel, String host, int type, Promise<DNSWireFormat.Response> promise);
+
+    /**
+     * Fails queries waiting for responses
+     *
+     * @param cause cause
+     */
+    protected abstract void failPending(Throwable cause);
+
+    /**
+     * Closes the connection and fails queries sent over it
+     *
+     * @param cause cause
+     */
+    void fail(Throwable cause) {
+        if (closed) return;
+        closed = true;
+        ready.tryFailure(cause);
+        failPending(cause);
+        if (ready.isSuccess()) ready.getNow().close();
+    }
+
+    @Override
+    public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+        fail(new ClosedChannelException());
+        super.channelInactive(ctx);
+    }
+
+    @Override
+    public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+        if (evt instanceof IdleStateEvent) {
+            ctx.close();
+        } else {
+            super.userEventTriggered(ctx, evt);
+        }
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+        fail(cause);
+        ctx.close();
+    }
+}
@@ -0,0 +1,279 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.channel.EventLoop;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.resolver.NameResolver;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.PromiseCombiner;
+
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Resolver sending DNS queries over TLS (tls://host[:port])
+ * or over HTTPS (https://host[:port]/path)
+ *
+ * Each event loop keeps one persistent connection to the server,
+ * A and AAAA queries of all lookups made on the event loop share it
+ *
+ * When the server can't be reached, lookups made on the event loop fail
+ * without connecting again until the reconnect delay passes,
+ * the delay doubles with every failed attempt
+ */
+public class EncryptedDNSResolver {
+
+    private static final int DOT_PORT = 853;
+    private static final int DOH_PORT = 443;
+
+    private static final long RECONNECT_DELAY_MILLIS = 1000;
+    private static final long MAX_RECONNECT_DELAY_MILLIS = 30000;
+
+    private final boolean https;
+    private final String serverHost;
+    private final int serverPort;
+    private final String authority;
+    private final String path;
+    private final SslContext sslContext;
+
+    private final Map<EventLoop, LoopConnection> connections = new ConcurrentHashMap<>();
+
+    /**
+     * Creates resolver verifying the server against the default trust store
+     *
+     * @param uri server URI
+     * @throws IllegalArgumentException if the URI is not supported
+     * @throws SSLException if TLS context could not be created
+     */
+    public EncryptedDNSResolver(String uri) throws SSLException {
+        this(uri, SslContextBuilder.forClient().build());
+    }
+
+    /**
+     * Creates resolver with a custom TLS context, for instance trusting a local server
+     *
+     * @param uri server URI
+     * @param sslContext client TLS context
+     * @throws IllegalArgumentException if the URI is not supported
+     */
+    public EncryptedDNSResolver(String uri, SslContext sslContext) {
+        final URI parsed = parse(uri);
+        this.https = parsed.getScheme().equalsIgnoreCase("https");
+        this.serverHost = parsed.getHost();
+        this.serverPort = parsed.getPort() != -1 ? parsed.getPort() : (https ? DOH_PORT : DOT_PORT);
+        this.authority = parsed.getPort() != -1 ? serverHost + ':' + serverPort : serverHost;
+        this.path = parsed.getRawPath() == null || parsed.getRawPath().isEmpty() ? "/" : parsed.getRawPath();
+        this.sslContext = sslContext;
+    }
+
+    /**
+     * Checks whether the URI of an encrypted DNS server is supported
+     *
+     * @param uri server URI
+     * @throws IllegalArgumentException if the URI is not supported
+     */
+    public static void validate(String uri) {
+        parse(uri);
+    }
+
+    private static URI parse(String uri) {
+        final URI parsed;
+        try {
+            parsed = new URI(uri);
+        } catch (URISyntaxException ex) {
+            throw new IllegalArgumentException("Invalid encrypted DNS server URI: '" + uri + "'", ex);
+        }
+        if (parsed.getScheme() == null || parsed.getHost() == null
+                || !(parsed.getScheme().equalsIgnoreCase("https") || parsed.getScheme().equalsIgnoreCase("tls"))) {
+            throw new IllegalArgumentException("Unsupported encrypted DNS server URI: '" + uri + "'");
+        }
+        return parsed;
+    }
+
+    /**
+     * Resolves A and AAAA records of the host
+     *
+     * @param host host
+     * @param loop event loop the query is sent from
+     * @param bootstrapResolver resolver of the address of the encrypted DNS server
+     * @return future completed with the answer,
+     *         fails with {@link UnknownHostException} when the host has no addresses
+     */
+    public Future<Answer> resolve(String host, EventLoop loop, NameResolver<InetAddress> bootstrapResolver) {
+        final Promise<Answer> promise = loop.newPromise();
+        if (loop.inEventLoop()) {
+            resolve(host, loop, bootstrapResolver, promise, true);
+        } else {
+            loop.execute(() -> resolve(host, loop, bootstrapResolver, promise, true));
+        }
+        return promise;
+    }
+
+    private void resolve(String host, EventLoop loop, NameResolver<InetAddress> bootstrapResolver,
+                         Promise<Answer> promise, boolean retry) {
+        final LoopConnection slot = connections.computeIfAbsent(loop, key -> new LoopConnection());
+        final EncryptedDNSConnection connection = connection(slot, loop, bootstrapResolver);
+        if (connection == null) {
+            promise.tryFailure(slot.cause);
+            return;
+        }
+        final Future<DNSWireFormat.Response> ipv4 = connection.query(host, DNSWireFormat.TYPE_A);
+        final Future<DNSWireFormat.Response> ipv6 = connection.query(host, DNSWireFormat.TYPE_AAAA);
+
+        final PromiseCombiner combiner = new PromiseCombiner(loop);
+        combiner.addAll(ipv4, ipv6);
+        final Promise<Void> done = loop.newPromise();
+        combiner.finish(done);
+        done.addListener(future -> {
+            // the server may close an idle connection while the queries are being sent
+            if (retry && (ipv4.cause() instanceof ClosedChannelException || ipv6.cause() instanceof ClosedChannelException)) {
+                resolve(host, loop, bootstrapResolver, promise, false);
+                return;
+            }
+
+            final List<InetAddress> addresses = new ArrayList<>();
+            long ttl = Long.MAX_VALUE;
+            Throwable cause = null;
+            for (Future<DNSWireFormat.Response> query : Arrays.asList(ipv4, ipv6)) {
+                if (!query.isSuccess()) {
+                    cause = query.cause();
+                    continue;
+                }
+                final DNSWireFormat.Response response = query.getNow();
+                if (response.rcode != DNSWireFormat.RCODE_NOERROR && response.rcode != DNSWireFormat.RCODE_NXDOMAIN) {
+                    cause = new IOException("DNS server responded with error code " + response.rcode);
+                    continue;
+                }
+                if (response.addresses.isEmpty()) continue;
+                addresses.addAll(response.addresses);
+                ttl = Math.min(ttl, response.ttl);
+            }
+
+            if (!addresses.isEmpty()) {
+                promise.trySuccess(new Answer(addresses, ttl));
+            } else {
+                promise.tryFailure(cause != null ? cause : new UnknownHostException(host));
+            }
+        });
+    }
+
+    /**
+     * Returns the open connection of the event loop or opens a new one
+     *
+     * @return connection, or null while the reconnect delay after a failed attempt has not passed
+     */
+    private EncryptedDNSConnection connection(LoopConnection slot, EventLoop loop,
+                                              NameResolver<InetAddress> bootstrapResolver) {
+        if (slot.connection != null && slot.connection.isOpen()) return slot.connection;
+        if (slot.failures > 0 && System.nanoTime() - slot.retryAt < 0) return null;
+
+        final EncryptedDNSConnection connection = https
+                ? new DNSOverHTTPSConnection(loop, authority, path)
+                : new DNSOverTLSConnection(loop);
+        slot.connection = connection;
+        connection.established().addListener(future -> {
+            if (future.isSuccess()) {
+                slot.failures = 0;
+                slot.cause = null;
+            } else if (slot.connection == connection) {
+                final long delay = Math.min(MAX_RECONNECT_DELAY_MILLIS, RECONNECT_DELAY_MILLIS << Math.min(slot.failures, 5));
+                slot.failures++;
+                slot.retryAt = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay);
+                slot.cause = future.cause();
+            }
+        });
+        // queries are queued by the connection until it is established
+        bootstrapResolver.resolve(serverHost).addListener((Future<InetAddress> future) -> {
+            if (future.isSuccess()) {
+                connection.connect(new InetSocketAddress(future.getNow(), serverPort), sslContext, serverHost);
+            } else {
+                connection.fail(future.cause());
+            }
+        });
+        return connection;
+    }
+
+    /**
+     * Closes connections of all event loops
+     */
+    public void close() {
+        for (Map.Entry<EventLoop, LoopConnection> entry : connections.entrySet()) {
+            final LoopConnection slot = entry.getValue();
+            if (!entry.getKey().isShuttingDown()) entry.getKey().execute(() -> {
+                if (slot.connection != null) slot.connection.close();
+            });
+        }
+        connections.clear();
+    }
+
+    /**
+     * Connection of an event loop and its failed connection attempts,
+     * accessed only from the event loop
+     */
+    private static class LoopConnection {
+        private EncryptedDNSConnection connection;
+        private int failures = 0;
+        private long retryAt;
+        private Throwable cause;
+    }
+
+    public static class Answer {
+
+        private final List<InetAddress> addresses;
+        private final long ttl;
+
+        private Answer(List<InetAddress> addresses, long ttl) {
+            this.addresses = Collections.unmodifiableList(addresses);
+            this.ttl = ttl;
+        }
+
+        /**
+         * Returns resolved addresses, IPv4 addresses go first
+         *
+         * @return resolved addresses
+         */
+        public List<InetAddress> getAddresses() {
+            return addresses;
+        }
+
+        /**
+         * Returns the lowest TTL of the address records
+         *
+         * @return TTL in seconds
+         */
+        public long getTtl() {
+            return ttl;
+        }
+    }
+}
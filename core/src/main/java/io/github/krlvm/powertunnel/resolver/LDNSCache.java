@@ -0,0 +1,396 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.channel.EventLoop;
+import io.netty.handler.codec.dns.DnsRecord;
+import io.netty.resolver.dns.DnsCache;
+import io.netty.resolver.dns.DnsCacheEntry;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded cache of resolved addresses shared by DNS resolvers of all event loops
+ *
+ * Addresses expire after the TTL of their records (limited by {@link #MAX_TTL}),
+ * failed resolutions are cached for {@link #NEGATIVE_TTL}.
+ * Entries that have been hit at least twice are refreshed in the background
+ * shortly before they expire, see {@link #startPrefetch(String)} and {@link #prefetchView()}.
+ *
+ * Responses of proxy listeners are cached separately, under the TTL chosen by the listener.
+ *
+ * The cache is split into independently locked segments,
+ * each segment evicts the least recently used entries when it is full
+ */
+public class LDNSCache implements DnsCache {
+
+    private static final long MAX_TTL = TimeUnit.HOURS.toNanos(1);
+    private static final long NEGATIVE_TTL = TimeUnit.SECONDS.toNanos(10);
+    // entries are prefetched when this part of their TTL is left
+    private static final int PREFETCH_FRACTION = 10;
+    private static final int PREFETCH_MIN_HITS = 2;
+
+    private static final int SEGMENTS = 16;
+
+    private final Segment<HostEntry>[] hosts;
+    private final Segment<ListenerEntry>[] responses;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong negativeHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong prefetches = new AtomicLong();
+    private final AtomicLong listenerHits = new AtomicLong();
+
+    private final DnsCache prefetchView = new PrefetchView();
+
+    @SuppressWarnings("unchecked")
+    public LDNSCache(int maxSize) {
+        final int segmentSize = Math.max(1, maxSize / SEGMENTS);
+        hosts = new Segment[SEGMENTS];
+        responses = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++) {
+            hosts[i] = new Segment<>(segmentSize);
+            responses[i] = new Segment<>(segmentSize);
+        }
+    }
+
+    // region Resolved Addresses
+
+    @Override
+    public List<? extends DnsCacheEntry> get(String hostname, DnsRecord[] additionals) {
+        if (!isCacheable(additionals)) return null;
+        final String host = normalize(hostname);
+        final Segment<HostEntry> segment = segment(hosts, host);
+        final long now = System.nanoTime();
+        synchronized (segment) {
+            final HostEntry entry = segment.get(host);
+            if (entry == null || entry.isExpired(now)) {
+                misses.incrementAndGet();
+                return null;
+            }
+            entry.hits++;
+            (entry.cause != null ? negativeHits : hits).incrementAndGet();
+            return entry.cause != null ? Collections.singletonList(new Entry(null, entry.cause)) : entry.addresses;
+        }
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, InetAddress address, long originalTtl, EventLoop loop) {
+        final Entry cached = new Entry(address, null);
+        if (!isCacheable(additionals) || originalTtl <= 0) return cached;
+        put(normalize(hostname), cached, Math.min(TimeUnit.SECONDS.toNanos(originalTtl), MAX_TTL), false);
+        return cached;
+    }
+
+    @Override
+    public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, Throwable cause, EventLoop loop) {
+        final Entry cached = new Entry(null, cause);
+        if (!isCacheable(additionals)) return cached;
+        final String host = normalize(hostname);
+        final Segment<HostEntry> segment = segment(hosts, host);
+        final long now = System.nanoTime();
+        synchronized (segment) {
+            final HostEntry entry = segment.get(host);
+            // a failed refresh keeps the addresses until they expire
+            if (entry == null || entry.isExpired(now)) segment.put(host, new HostEntry(cause, now + NEGATIVE_TTL, NEGATIVE_TTL));
+        }
+        return cached;
+    }
+
+    private void put(String host, Entry address, long ttl, boolean prefetched) {
+        final Segment<HostEntry> segment = segment(hosts, host);
+        final long now = System.nanoTime();
+        synchronized (segment) {
+            HostEntry entry = segment.get(host);
+            // the first address of a resolution replaces expired, negative or prefetched entries
+            if (entry == null || entry.isExpired(now) || entry.cause != null || (prefetched && entry.prefetching)) {
+                segment.put(host, entry = new HostEntry(null, now + ttl, ttl));
+            }
+            for (Entry e : entry.addresses) {
+                if (e.address.equals(address.address)) return;
+            }
+            final List<Entry> addresses = new ArrayList<>(entry.addresses.size() + 1);
+            addresses.addAll(entry.addresses);
+            addresses.add(address);
+            entry.addresses = Collections.unmodifiableList(addresses);
+            if (now + ttl - entry.expiresAt < 0) entry.expiresAt = now + ttl;
+        }
+    }
+
+    /**
+     * Marks a popular entry that is about to expire as being prefetched
+     *
+     * @param hostname host
+     * @return true if the host has to be resolved again with a resolver using {@link #prefetchView()}
+     */
+    public boolean startPrefetch(String hostname) {
+        final String host = normalize(hostname);
+        final Segment<HostEntry> segment = segment(hosts, host);
+        final long now = System.nanoTime();
+        synchronized (segment) {
+            final HostEntry entry = segment.get(host);
+            if (entry == null || entry.cause != null || entry.prefetching || entry.hits < PREFETCH_MIN_HITS
+                    || entry.isExpired(now) || entry.expiresAt - now > entry.ttl / PREFETCH_FRACTION) return false;
+            entry.prefetching = true;
+        }
+        prefetches.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Clears the prefetch mark of the entry after a failed refresh,
+     * so the entry can be prefetched again
+     *
+     * @param hostname host
+     */
+    public void cancelPrefetch(String hostname) {
+        final String host = normalize(hostname);
+        final Segment<HostEntry> segment = segment(hosts, host);
+        synchronized (segment) {
+            final HostEntry entry = segment.get(host);
+            if (entry != null) entry.prefetching = false;
+        }
+    }
+
+    /**
+     * Returns view of the cache for resolvers refreshing entries:
+     * it never returns cached addresses and replaces entries instead of extending them
+     *
+     * @return prefetch view of the cache
+     */
+    public DnsCache prefetchView() {
+        return prefetchView;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment<HostEntry> segment : hosts) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    @Override
+    public boolean clear(String hostname) {
+        final String host = normalize(hostname);
+        final Segment<HostEntry> segment = segment(hosts, host);
+        synchronized (segment) {
+            return segment.remove(host) != null;
+        }
+    }
+
+    // endregion
+
+    // region Listener Responses
+
+    /**
+     * Returns response of a proxy listener cached for the host and port
+     *
+     * @param hostname host
+     * @param port port
+     * @return addresses of the cached response or null
+     */
+    public List<InetSocketAddress> getListenerResponses(String hostname, int port) {
+        final String key = normalize(hostname) + ':' + port;
+        final Segment<ListenerEntry> segment = segment(responses, key);
+        synchronized (segment) {
+            final ListenerEntry entry = segment.get(key);
+            if (entry == null || entry.expiresAt - System.nanoTime() < 0) return null;
+            listenerHits.incrementAndGet();
+            return entry.responses;
+        }
+    }
+
+    /**
+     * Caches response of a proxy listener
+     *
+     * @param hostname host
+     * @param port port
+     * @param responses addresses of the response
+     * @param ttl time to live in nanoseconds
+     */
+    public void cacheListenerResponses(String hostname, int port, List<InetSocketAddress> responses, long ttl) {
+        if (ttl <= 0 || responses.isEmpty()) return;
+        final String key = normalize(hostname) + ':' + port;
+        final Segment<ListenerEntry> segment = segment(this.responses, key);
+        synchronized (segment) {
+            segment.put(key, new ListenerEntry(responses, System.nanoTime() + ttl));
+        }
+    }
+
+    /**
+     * Removes cached responses of proxy listeners
+     */
+    public void clearListenerResponses() {
+        for (Segment<ListenerEntry> segment : responses) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+    }
+
+    /**
+     * Removes responses of proxy listeners cached for the host on any port
+     *
+     * @param hostname host
+     */
+    public void clearListenerResponses(String hostname) {
+        final String prefix = normalize(hostname) + ':';
+        for (Segment<ListenerEntry> segment : responses) {
+            synchronized (segment) {
+                segment.keySet().removeIf(key -> key.startsWith(prefix));
+            }
+        }
+    }
+
+    // endregion
+
+    /**
+     * Returns snapshot of cache statistics
+     *
+     * @return cache statistics
+     */
+    public DNSCacheStats getStats() {
+        int size = 0;
+        for (Segment<HostEntry> segment : hosts) {
+            synchronized (segment) {
+                size += segment.size();
+            }
+        }
+        return new DNSCacheStats(hits.get(), negativeHits.get(), misses.get(), prefetches.get(), listenerHits.get(), size);
+    }
+
+    private static boolean isCacheable(DnsRecord[] additionals) {
+        // results of queries with additional records depend on them
+        return additionals == null || additionals.length == 0;
+    }
+
+    private static String normalize(String host) {
+        host = host.toLowerCase(Locale.ROOT);
+        return host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+    }
+
+    private static <V> Segment<V> segment(Segment<V>[] segments, String key) {
+        final int hash = key.hashCode();
+        return segments[(hash ^ (hash >>> 16)) & (SEGMENTS - 1)];
+    }
+
+    private class PrefetchView implements DnsCache {
+
+        @Override
+        public List<? extends DnsCacheEntry> get(String hostname, DnsRecord[] additionals) {
+            return null;
+        }
+
+        @Override
+        public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, InetAddress address, long originalTtl, EventLoop loop) {
+            final Entry cached = new Entry(address, null);
+            if (isCacheable(additionals) && originalTtl > 0) {
+                put(normalize(hostname), cached, Math.min(TimeUnit.SECONDS.toNanos(originalTtl), MAX_TTL), true);
+            }
+            return cached;
+        }
+
+        @Override
+        public DnsCacheEntry cache(String hostname, DnsRecord[] additionals, Throwable cause, EventLoop loop) {
+            return LDNSCache.this.cache(hostname, additionals, cause, loop);
+        }
+
+        @Override
+        public void clear() {
+        }
+
+        @Override
+        public boolean clear(String hostname) {
+            return false;
+        }
+    }
+
+    private static class Segment<V> extends LinkedHashMap<String, V> {
+
+        private final int maxSize;
+
+        private Segment(int maxSize) {
+            super(16, 0.75f, true);
+            this.maxSize = maxSize;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, V> eldest) {
+            return size() > maxSize;
+        }
+    }
+
+    private static class HostEntry {
+
+        // copied on write, so it can be returned to resolvers as is
+        private List<Entry> addresses = Collections.emptyList();
+        private final Throwable cause;
+        private long expiresAt;
+        private final long ttl;
+        private int hits;
+        private boolean prefetching;
+
+        private HostEntry(Throwable cause, long expiresAt, long ttl) {
+            this.cause = cause;
+            this.expiresAt = expiresAt;
+            this.ttl = ttl;
+        }
+
+        private boolean isExpired(long now) {
+            return expiresAt - now < 0;
+        }
+    }
+
+    private static class ListenerEntry {
+
+        private final List<InetSocketAddress> responses;
+        private final long expiresAt;
+
+        private ListenerEntry(List<InetSocketAddress> responses, long expiresAt) {
+            this.responses = responses;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    private static class Entry implements DnsCacheEntry {
+
+        private final InetAddress address;
+        private final Throwable cause;
+
+        private Entry(InetAddress address, Throwable cause) {
+            this.address = address;
+            this.cause = cause;
+        }
+
+        @Override
+        public InetAddress address() {
+            return address;
+        }
+
+        @Override
+        public Throwable cause() {
+            return cause;
+        }
+    }
+}
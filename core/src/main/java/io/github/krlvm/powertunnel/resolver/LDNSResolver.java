@@ -19,36 +19,315 @@ package io.github.krlvm.powertunnel.resolver;
 
 import io.github.krlvm.powertunnel.sdk.proxy.DNSRequest;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
-import org.littleshoot.proxy.DefaultHostResolver;
-import org.littleshoot.proxy.HostResolver;
+import io.netty.channel.EventLoop;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioDatagramChannel;
+import io.netty.resolver.HostsFileEntriesResolver;
+import io.netty.resolver.InetNameResolver;
+import io.netty.resolver.NameResolver;
+import io.netty.resolver.ResolvedAddressTypes;
+import io.netty.resolver.dns.*;
+import io.netty.util.NetUtil;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.PromiseNotifier;
+import org.littleshoot.proxy.AsyncHostResolver;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
-public class LDNSResolver implements HostResolver {
+public class LDNSResolver implements AsyncHostResolver {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(LDNSResolver.class);
 
+    private static final int DNS_PORT = 53;
+    private static final int CACHE_SIZE = 4096;
+    private static final int SYSTEM_RESOLVER_THREADS = 8;
+
     private final ProxyListener listener;
     private final boolean allowFallbackResolver;
 
-    private final HostResolver resolver = new DefaultHostResolver();
+    // null when no DNS servers are configured, hosts are resolved by the operating system then
+    private final DnsServerAddressStreamProvider nameServers;
+    // blocking lookups of the operating system resolver
+    private final ThreadPoolExecutor systemExecutor;
+    // event loop synchronous lookups are made on, created on first use
+    private EventLoopGroup syncLoop;
+    private final List<String> searchDomains;
+    private final LDNSCache cache = new LDNSCache(CACHE_SIZE);
+    // DnsNameResolver is bound to the event loop it runs on
+    private final Map<EventLoop, Resolvers> resolvers = new ConcurrentHashMap<>();
+    private final Map<String, Future<List<InetSocketAddress>>> inFlight = new ConcurrentHashMap<>();
+    // when set, hosts are resolved over encrypted DNS, plain DNS only resolves the encrypted DNS server
+    private final EncryptedDNSResolver encryptedResolver;
 
     public LDNSResolver(ProxyListener listener, boolean allowFallbackResolver) {
+        this(listener, allowFallbackResolver, Collections.emptyList(), null);
+    }
+
+    public LDNSResolver(ProxyListener listener, boolean allowFallbackResolver,
+                        List<String> dnsServers, String dnsDomainsSearchPath) {
+        this(listener, allowFallbackResolver, dnsServers, dnsDomainsSearchPath, null);
+    }
+
+    public LDNSResolver(ProxyListener listener, boolean allowFallbackResolver,
+                        List<String> dnsServers, String dnsDomainsSearchPath,
+                        EncryptedDNSResolver encryptedResolver) {
         this.listener = listener;
         this.allowFallbackResolver = allowFallbackResolver;
+        this.nameServers = nameServers(dnsServers);
+        this.searchDomains = searchDomains(dnsDomainsSearchPath);
+        this.encryptedResolver = encryptedResolver;
+        if(nameServers == null) {
+            systemExecutor = new ThreadPoolExecutor(SYSTEM_RESOLVER_THREADS, SYSTEM_RESOLVER_THREADS, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), new DefaultThreadFactory("dns-resolver", true));
+            systemExecutor.allowCoreThreadTimeOut(true);
+        } else {
+            systemExecutor = null;
+        }
     }
 
+    /**
+     * Resolves the host the same way as {@link #resolveAllAsync(String, int, EventLoop)},
+     * blocking the calling thread, which must not be an event loop
+     */
     @Override
     public InetSocketAddress resolve(String host, int port) throws UnknownHostException {
+        final Future<List<InetSocketAddress>> future = resolveAllAsync(host, port, syncLoop()).awaitUninterruptibly();
+        if(!future.isSuccess()) throw unknownHost(host, future.cause());
+        return future.getNow().get(0);
+    }
+
+    private synchronized EventLoop syncLoop() {
+        if(syncLoop == null) syncLoop = new NioEventLoopGroup(1, new DefaultThreadFactory("dns-sync", true));
+        return syncLoop.next();
+    }
+
+    @Override
+    public Future<InetSocketAddress> resolveAsync(String host, int port, EventLoop eventLoop) {
+        final Promise<InetSocketAddress> promise = eventLoop.newPromise();
+        resolveAllAsync(host, port, eventLoop).addListener((Future<List<InetSocketAddress>> future) -> {
+            if(future.isSuccess()) {
+                promise.trySuccess(future.getNow().get(0));
+            } else {
+                promise.tryFailure(future.cause());
+            }
+        });
+        return promise;
+    }
+
+    @Override
+    public Future<List<InetSocketAddress>> resolveAllAsync(String host, int port, EventLoop eventLoop) {
+        final List<InetSocketAddress> cached = cache.getListenerResponses(host, port);
+        if(cached != null) return eventLoop.newSucceededFuture(cached);
+
+        // concurrent lookups of the same host (e.g. parallel connections of a browser)
+        // share one resolution, listeners are asked once per lookup
+        final String key = host.toLowerCase(Locale.ROOT) + ':' + port;
+        final Promise<List<InetSocketAddress>> resolution = eventLoop.newPromise();
+        Future<List<InetSocketAddress>> shared = inFlight.putIfAbsent(key, resolution);
+        if(shared == null) {
+            shared = resolution;
+            resolution.addListener(future -> inFlight.remove(key, resolution));
+            try {
+                resolveAllAsync0(host, port, eventLoop).addListener(new PromiseNotifier<>(false, resolution));
+            } catch (RuntimeException ex) {
+                resolution.tryFailure(ex);
+                throw ex;
+            }
+        }
+
+        // every lookup gets its own future notified on its event loop
+        final Promise<List<InetSocketAddress>> promise = eventLoop.newPromise();
+        shared.addListener(new PromiseNotifier<>(false, promise));
+        return promise;
+    }
+
+    private Future<List<InetSocketAddress>> resolveAllAsync0(String host, int port, EventLoop eventLoop) {
         final DNSRequest request = new DNSRequest(host, port);
         final Boolean result = listener.onResolutionRequest(request);
         if(result != null && !result) {
             LOGGER.error("Resolution of hostname '{}' failed", host);
-            if(!this.allowFallbackResolver) throw new UnknownHostException();
+            if(!this.allowFallbackResolver) return eventLoop.newFailedFuture(new UnknownHostException(host));
+        }
+        if(!request.getResponses().isEmpty()) {
+            cache.cacheListenerResponses(host, port, request.getResponses(), request.getTtl(TimeUnit.NANOSECONDS));
+            return eventLoop.newSucceededFuture(request.getResponses());
+        }
+
+        final Resolvers loopResolvers = resolvers.computeIfAbsent(eventLoop, this::createResolvers);
+        if(encryptedResolver != null) return resolveEncrypted(host, port, eventLoop, loopResolvers.resolver);
+        if(loopResolvers.prefetcher != null && cache.startPrefetch(host)) {
+            loopResolvers.prefetcher.resolve(host).addListener(future -> {
+                if(!future.isSuccess()) {
+                    cache.cancelPrefetch(host);
+                    LOGGER.debug("Failed to refresh cached addresses of '{}'", host, future.cause());
+                }
+            });
+        }
+
+        final Promise<List<InetSocketAddress>> promise = eventLoop.newPromise();
+        loopResolvers.resolver.resolveAll(host).addListener((Future<List<InetAddress>> future) -> {
+            if(future.isSuccess()) {
+                promise.trySuccess(socketAddresses(future.getNow(), port));
+            } else {
+                promise.tryFailure(unknownHost(host, future.cause()));
+            }
+        });
+        return promise;
+    }
+
+    private Future<List<InetSocketAddress>> resolveEncrypted(String host, int port, EventLoop eventLoop,
+                                                             NameResolver<InetAddress> bootstrapResolver) {
+        final byte[] literal = NetUtil.createByteArrayFromIpAddressString(host);
+        try {
+            if(literal != null) return eventLoop.newSucceededFuture(Collections.singletonList(
+                    new InetSocketAddress(InetAddress.getByAddress(literal), port)));
+        } catch (UnknownHostException ignore) {}
+        final InetAddress hostsFileAddress = HostsFileEntriesResolver.DEFAULT.address(host, ResolvedAddressTypes.IPV4_PREFERRED);
+        if(hostsFileAddress != null) return eventLoop.newSucceededFuture(Collections.singletonList(
+                new InetSocketAddress(hostsFileAddress, port)));
+
+        final List<? extends DnsCacheEntry> cached = cache.get(host, null);
+        if(cached != null && !cached.isEmpty()) {
+            if(cache.startPrefetch(host)) {
+                cacheAnswer(cache.prefetchView(), host, eventLoop, encryptedResolver.resolve(host, eventLoop, bootstrapResolver))
+                        .addListener(future -> {
+                            if(!future.isSuccess()) {
+                                cache.cancelPrefetch(host);
+                                LOGGER.debug("Failed to refresh cached addresses of '{}'", host, future.cause());
+                            }
+                        });
+            }
+            if(cached.get(0).cause() != null) return eventLoop.newFailedFuture(unknownHost(host, cached.get(0).cause()));
+            final List<InetAddress> addresses = new ArrayList<>(cached.size());
+            for (DnsCacheEntry entry : cached) addresses.add(entry.address());
+            return eventLoop.newSucceededFuture(socketAddresses(addresses, port));
+        }
+
+        final Promise<List<InetSocketAddress>> promise = eventLoop.newPromise();
+        cacheAnswer(cache, host, eventLoop, encryptedResolver.resolve(host, eventLoop, bootstrapResolver))
+                .addListener((Future<EncryptedDNSResolver.Answer> future) -> {
+                    if(future.isSuccess()) {
+                        promise.trySuccess(socketAddresses(future.getNow().getAddresses(), port));
+                    } else {
+                        promise.tryFailure(unknownHost(host, future.cause()));
+                    }
+                });
+        return promise;
+    }
+
+    private static List<InetSocketAddress> socketAddresses(List<InetAddress> addresses, int port) {
+        final List<InetSocketAddress> socketAddresses = new ArrayList<>(addresses.size());
+        for (InetAddress address : addresses) socketAddresses.add(new InetSocketAddress(address, port));
+        return socketAddresses;
+    }
+
+    private static Future<EncryptedDNSResolver.Answer> cacheAnswer(DnsCache target, String host, EventLoop eventLoop,
+                                                                   Future<EncryptedDNSResolver.Answer> answer) {
+        return answer.addListener((Future<EncryptedDNSResolver.Answer> future) -> {
+            if(future.isSuccess()) {
+                for (InetAddress address : future.getNow().getAddresses()) {
+                    target.cache(host, null, address, future.getNow().getTtl(), eventLoop);
+                }
+            } else {
+                target.cache(host, null, future.cause(), eventLoop);
+            }
+        });
+    }
+
+    private static UnknownHostException unknownHost(String host, Throwable cause) {
+        if(cause instanceof UnknownHostException) return (UnknownHostException) cause;
+        final UnknownHostException ex = new UnknownHostException(host);
+        ex.initCause(cause);
+        return ex;
+    }
+
+    private Resolvers createResolvers(EventLoop eventLoop) {
+        // addresses returned by the operating system have no TTL, they are not cached here
+        if(nameServers == null) return new Resolvers(new SystemNameResolver(eventLoop, systemExecutor), null);
+        return new Resolvers(createResolver(eventLoop, cache), createResolver(eventLoop, cache.prefetchView()));
+    }
+
+    private DnsNameResolver createResolver(EventLoop eventLoop, DnsCache resolveCache) {
+        final DnsNameResolverBuilder builder = new DnsNameResolverBuilder(eventLoop)
+                .channelType(NioDatagramChannel.class)
+                .nameServerProvider(nameServers)
+                .resolveCache(resolveCache);
+        if(!searchDomains.isEmpty()) builder.searchDomains(searchDomains);
+        return builder.build();
+    }
+
+    public LDNSCache getCache() {
+        return cache;
+    }
+
+    /**
+     * Closes DNS resolvers and encrypted DNS connections of all event loops
+     */
+    public void close() {
+        if(encryptedResolver != null) encryptedResolver.close();
+        for (Resolvers loopResolvers : resolvers.values()) {
+            loopResolvers.resolver.close();
+            if(loopResolvers.prefetcher != null) loopResolvers.prefetcher.close();
+        }
+        resolvers.clear();
+        if(systemExecutor != null) systemExecutor.shutdown();
+        synchronized (this) {
+            if(syncLoop != null) syncLoop.shutdownGracefully(0, 0, TimeUnit.SECONDS);
+            syncLoop = null;
+        }
+    }
+
+    private static DnsServerAddressStreamProvider nameServers(List<String> dnsServers) {
+        if(dnsServers == null) dnsServers = Collections.emptyList();
+        final List<InetSocketAddress> addresses = new ArrayList<>();
+        for (String server : dnsServers) {
+            // only IP addresses are accepted, literals are parsed without a lookup
+            if(NetUtil.isValidIpV4Address(server) || NetUtil.isValidIpV6Address(server)) {
+                addresses.add(new InetSocketAddress(server, DNS_PORT));
+            } else {
+                LOGGER.warn("Ignoring invalid DNS server address '{}'", server);
+            }
+        }
+        // Netty reads the system name servers on its own and silently falls back to public DNS servers
+        // when it can't (e.g. on Android), so the operating system resolver is used instead
+        return addresses.isEmpty() ? null : new SequentialDnsServerAddressStreamProvider(addresses);
+    }
+
+    private static List<String> searchDomains(String dnsDomainsSearchPath) {
+        if(dnsDomainsSearchPath == null) return Collections.emptyList();
+        final List<String> domains = new ArrayList<>();
+        for (String domain : dnsDomainsSearchPath.split(",")) {
+            domain = domain.trim();
+            if(!domain.isEmpty()) domains.add(domain);
+        }
+        return domains;
+    }
+
+    private static class Resolvers {
+
+        private final InetNameResolver resolver;
+        // bypasses the cache and replaces entries that are about to expire, null for the system resolver
+        private final DnsNameResolver prefetcher;
+
+        private Resolvers(InetNameResolver resolver, DnsNameResolver prefetcher) {
+            this.resolver = resolver;
+            this.prefetcher = prefetcher;
         }
-        return request.getResponse() == null ? this.resolver.resolve(host, port) : request.getResponse();
     }
 }
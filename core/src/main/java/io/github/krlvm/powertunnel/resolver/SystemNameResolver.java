@@ -0,0 +1,79 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.resolver.InetNameResolver;
+import io.netty.util.concurrent.EventExecutor;
+import io.netty.util.concurrent.Promise;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Resolver asking the operating system, as {@link InetAddress} does,
+ * the blocking lookups are made on a separate executor, never on the event loop
+ *
+ * It is used when no DNS servers are configured: unlike Netty's DNS resolver
+ * it never falls back to a public DNS server when the system name servers can't be read,
+ * and it sees names known only to the system (VPN, split-horizon, mDNS)
+ */
+class SystemNameResolver extends InetNameResolver {
+
+    private final Executor blockingExecutor;
+
+    /**
+     * @param executor executor the futures are notified on
+     * @param blockingExecutor executor the lookups are made on
+     */
+    SystemNameResolver(EventExecutor executor, Executor blockingExecutor) {
+        super(executor);
+        this.blockingExecutor = blockingExecutor;
+    }
+
+    @Override
+    protected void doResolve(String inetHost, Promise<InetAddress> promise) {
+        execute(promise, () -> promise.trySuccess(InetAddress.getByName(inetHost)));
+    }
+
+    @Override
+    protected void doResolveAll(String inetHost, Promise<List<InetAddress>> promise) {
+        execute(promise, () -> promise.trySuccess(Arrays.asList(InetAddress.getAllByName(inetHost))));
+    }
+
+    private void execute(Promise<?> promise, Lookup lookup) {
+        try {
+            blockingExecutor.execute(() -> {
+                try {
+                    lookup.run();
+                } catch (UnknownHostException | RuntimeException ex) {
+                    promise.tryFailure(ex);
+                }
+            });
+        } catch (RejectedExecutionException ex) {
+            promise.tryFailure(ex);
+        }
+    }
+
+    private interface Lookup {
+        void run() throws UnknownHostException;
+    }
+}
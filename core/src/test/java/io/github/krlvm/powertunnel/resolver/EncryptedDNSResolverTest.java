@@ -0,0 +1,390 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.resolver;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.*;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.codec.http.*;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import io.netty.resolver.InetNameResolver;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import io.netty.util.concurrent.Promise;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Tests {@link EncryptedDNSResolver} against local DoT and DoH servers
+ */
+public class EncryptedDNSResolverTest {
+
+    private static final String MALFORMED = "malformed.test";
+    private static final Map<String, byte[]> RECORDS = new HashMap<>();
+    static {
+        RECORDS.put("one.test", new byte[] { 10, 0, 0, 1 });
+        RECORDS.put("two.test", new byte[] { 10, 0, 0, 2 });
+        RECORDS.put("three.test", new byte[] { 10, 0, 0, 3 });
+    }
+
+    private static SelfSignedCertificate certificate;
+    private static NioEventLoopGroup serverGroup;
+
+    private NioEventLoopGroup clientGroup;
+    private EncryptedDNSResolver resolver;
+    private LocalServer server;
+
+    @BeforeAll
+    static void setUpServer() throws Exception {
+        certificate = new SelfSignedCertificate("localhost");
+        serverGroup = new NioEventLoopGroup(1);
+    }
+
+    @AfterAll
+    static void tearDownServer() {
+        serverGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).awaitUninterruptibly();
+        certificate.delete();
+    }
+
+    @AfterEach
+    void tearDown() throws Exception {
+        if (resolver != null) resolver.close();
+        if (clientGroup != null) clientGroup.shutdownGracefully(0, 0, TimeUnit.SECONDS).awaitUninterruptibly();
+        if (server != null) server.close();
+    }
+
+    @Test
+    public void pipelinesQueriesOverHTTPSInOrder() throws Exception {
+        // responses are held until all queries arrive and are sent in the order of the requests
+        start(true, certificate, 6, false);
+        final List<Future<EncryptedDNSResolver.Answer>> answers = resolveAll("one.test", "two.test", "three.test");
+
+        assertAddress("one.test", answers.get(0));
+        assertAddress("two.test", answers.get(1));
+        assertAddress("three.test", answers.get(2));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void matchesOutOfOrderTLSResponsesByID() throws Exception {
+        // responses are held until all queries arrive and are sent in the reverse order
+        start(false, certificate, 6, false);
+        final List<Future<EncryptedDNSResolver.Answer>> answers = resolveAll("one.test", "two.test", "three.test");
+
+        assertAddress("one.test", answers.get(0));
+        assertAddress("two.test", answers.get(1));
+        assertAddress("three.test", answers.get(2));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void malformedHTTPSResponseFailsOnlyItsQuery() throws Exception {
+        assertMalformedResponseFailsOnlyItsQuery(true);
+    }
+
+    @Test
+    public void malformedTLSResponseFailsOnlyItsQuery() throws Exception {
+        assertMalformedResponseFailsOnlyItsQuery(false);
+    }
+
+    private void assertMalformedResponseFailsOnlyItsQuery(boolean https) throws Exception {
+        start(https, certificate, 4, false);
+        final List<Future<EncryptedDNSResolver.Answer>> answers = resolveAll("one.test", MALFORMED);
+
+        assertAddress("one.test", answers.get(0));
+        assertTrue(answers.get(1).await(10, TimeUnit.SECONDS));
+        assertTrue(answers.get(1).cause() instanceof CorruptedFrameException);
+
+        // the connection stays usable
+        assertAddress("two.test", resolveAll("two.test").get(0));
+        assertEquals(1, server.connections.get());
+    }
+
+    @Test
+    public void retriesHTTPSQueriesAfterServerClosesConnection() throws Exception {
+        assertRetriesAfterServerClosesConnection(true);
+    }
+
+    @Test
+    public void retriesTLSQueriesAfterServerClosesConnection() throws Exception {
+        assertRetriesAfterServerClosesConnection(false);
+    }
+
+    private void assertRetriesAfterServerClosesConnection(boolean https) throws Exception {
+        // the first connection is closed when the queries arrive, as when it is closed for being idle
+        start(https, certificate, 1, true);
+        assertAddress("one.test", resolveAll("one.test").get(0));
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    public void reconnectsAfterIdleConnectionIsClosed() throws Exception {
+        start(false, certificate, 1, false);
+        assertAddress("one.test", resolveAll("one.test").get(0));
+
+        server.closeConnections();
+        waitFor(() -> server.open.get() == 0);
+        assertAddress("two.test", resolveAll("two.test").get(0));
+        assertEquals(2, server.connections.get());
+    }
+
+    @Test
+    public void delaysReconnectAfterFailedHandshake() throws Exception {
+        // the server certificate is not trusted by the client
+        final SelfSignedCertificate untrusted = new SelfSignedCertificate("localhost");
+        try {
+            start(false, untrusted, 1, false);
+            final Future<EncryptedDNSResolver.Answer> first = resolveAll("one.test").get(0);
+            assertTrue(first.await(10, TimeUnit.SECONDS));
+            assertFalse(first.isSuccess());
+
+            final Future<EncryptedDNSResolver.Answer> second = resolveAll("two.test").get(0);
+            assertTrue(second.await(10, TimeUnit.SECONDS));
+            assertSame(first.cause(), second.cause());
+            assertEquals(1, server.connections.get());
+        } finally {
+            untrusted.delete();
+        }
+    }
+
+    private void start(boolean https, SelfSignedCertificate serverCertificate, int batch, boolean closeFirst) throws Exception {
+        server = new LocalServer(https, serverCertificate, batch, closeFirst);
+        clientGroup = new NioEventLoopGroup(1);
+        final SslContext sslContext = SslContextBuilder.forClient().trustManager(certificate.cert()).build();
+        final String uri = (https ? "https" : "tls") + "://localhost:" + server.port() + (https ? "/dns-query" : "");
+        resolver = new EncryptedDNSResolver(uri, sslContext);
+    }
+
+    private List<Future<EncryptedDNSResolver.Answer>> resolveAll(String... hosts) {
+        final EventLoop loop = clientGroup.next();
+        final InetNameResolver bootstrap = new InetNameResolver(loop) {
+            @Override
+            protected void doResolve(String inetHost, Promise<InetAddress> promise) {
+                promise.setSuccess(InetAddress.getLoopbackAddress());
+            }
+
+            @Override
+            protected void doResolveAll(String inetHost, Promise<List<InetAddress>> promise) {
+                promise.setSuccess(Collections.singletonList(InetAddress.getLoopbackAddress()));
+            }
+        };
+        final List<Future<EncryptedDNSResolver.Answer>> answers = new ArrayList<>();
+        for (String host : hosts) answers.add(resolver.resolve(host, loop, bootstrap));
+        return answers;
+    }
+
+    private static void assertAddress(String host, Future<EncryptedDNSResolver.Answer> answer) throws InterruptedException {
+        assertTrue(answer.await(10, TimeUnit.SECONDS), "Lookup of " + host + " timed out");
+        assertNull(answer.cause(), "Lookup of " + host + " failed");
+        assertEquals(1, answer.getNow().getAddresses().size());
+        assertArrayEquals(RECORDS.get(host), answer.getNow().getAddresses().get(0).getAddress());
+        assertEquals(60, answer.getNow().getTtl());
+    }
+
+    private static void waitFor(Condition condition) throws InterruptedException {
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.met()) {
+            if (System.nanoTime() - deadline > 0) fail("Condition was not met in time");
+            Thread.sleep(10);
+        }
+    }
+
+    private interface Condition {
+        boolean met();
+    }
+
+    /**
+     * Encodes the response to a query: an A record for known hosts,
+     * an empty answer for AAAA queries and unknown hosts
+     * and a truncated message for {@link #MALFORMED}
+     */
+    private static ByteBuf answer(ByteBuf query) {
+        final int id = query.getUnsignedShort(0);
+        final StringBuilder name = new StringBuilder();
+        int index = 12;
+        for (int length; (length = query.getUnsignedByte(index)) != 0; index += length + 1) {
+            if (name.length() > 0) name.append('.');
+            name.append(query.toString(index + 1, length, StandardCharsets.US_ASCII));
+        }
+        final int type = query.getUnsignedShort(index + 1);
+        final ByteBuf response = Unpooled.buffer();
+        response.writeShort(id);
+        response.writeShort(0x8180);
+        if (name.toString().equals(MALFORMED)) {
+            response.writeShort(1);
+            return response;
+        }
+
+        final byte[] address = type == DNSWireFormat.TYPE_A ? RECORDS.get(name.toString()) : null;
+        response.writeShort(1);
+        response.writeShort(address != null ? 1 : 0);
+        response.writeShort(0);
+        response.writeShort(0);
+        response.writeBytes(query, 12, index + 5 - 12);
+        if (address != null) {
+            response.writeShort(0xC00C); // pointer to the question name
+            response.writeShort(DNSWireFormat.TYPE_A);
+            response.writeShort(1);
+            response.writeInt(60);
+            response.writeShort(address.length);
+            response.writeBytes(address);
+        }
+        return response;
+    }
+
+    /**
+     * DoT or DoH server holding the first responses of a connection until a number of queries arrive,
+     * later queries are answered right away
+     */
+    private static class LocalServer {
+
+        private final Channel channel;
+        private final ChannelGroup children = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger open = new AtomicInteger();
+
+        private LocalServer(boolean https, SelfSignedCertificate serverCertificate, int batch, boolean closeFirst) throws Exception {
+            final SslContext sslContext = SslContextBuilder.forServer(serverCertificate.certificate(), serverCertificate.privateKey()).build();
+            channel = new ServerBootstrap()
+                    .group(serverGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<Channel>() {
+                        @Override
+                        protected void initChannel(Channel ch) {
+                            final boolean close = connections.incrementAndGet() == 1 && closeFirst;
+                            open.incrementAndGet();
+                            children.add(ch);
+                            ch.closeFuture().addListener(future -> open.decrementAndGet());
+                            ch.pipeline().addLast(sslContext.newHandler(ch.alloc()));
+                            if (https) {
+                                ch.pipeline().addLast(new HttpServerCodec(), new HttpObjectAggregator(0xFFFF),
+                                        new HTTPSHandler(batch, close));
+                            } else {
+                                ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(0xFFFF, 0, 2, 0, 2),
+                                        new LengthFieldPrepender(2), new TLSHandler(batch, close));
+                            }
+                        }
+                    })
+                    .bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                    .sync().channel();
+        }
+
+        private int port() {
+            return ((InetSocketAddress) channel.localAddress()).getPort();
+        }
+
+        private void closeConnections() {
+            children.close().awaitUninterruptibly();
+        }
+
+        private void close() {
+            children.close().awaitUninterruptibly();
+            channel.close().awaitUninterruptibly();
+        }
+    }
+
+    private static class TLSHandler extends ChannelInboundHandlerAdapter {
+
+        private int batch;
+        private final boolean close;
+        private final List<ByteBuf> queries = new ArrayList<>();
+
+        private TLSHandler(int batch, boolean close) {
+            this.batch = batch;
+            this.close = close;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (close) {
+                ReferenceCountUtil.release(msg);
+                ctx.close();
+                return;
+            }
+            queries.add((ByteBuf) msg);
+            if (queries.size() < batch) return;
+            // IDs let the client match responses sent in any order
+            for (int i = queries.size() - 1; i >= 0; i--) {
+                ctx.write(answer(queries.get(i)));
+                queries.get(i).release();
+            }
+            queries.clear();
+            batch = 1;
+            ctx.flush();
+        }
+    }
+
+    private static class HTTPSHandler extends ChannelInboundHandlerAdapter {
+
+        private int batch;
+        private final boolean close;
+        private final List<FullHttpRequest> requests = new ArrayList<>();
+
+        private HTTPSHandler(int batch, boolean close) {
+            this.batch = batch;
+            this.close = close;
+        }
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            if (close) {
+                ReferenceCountUtil.release(msg);
+                ctx.close();
+                return;
+            }
+            requests.add((FullHttpRequest) msg);
+            if (requests.size() < batch) return;
+            // HTTP/1.1 responses have to follow the order of the requests
+            for (FullHttpRequest request : requests) {
+                assertEquals("/dns-query", request.uri());
+                final ByteBuf content = answer(request.content());
+                final FullHttpResponse response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+                response.headers()
+                        .set(HttpHeaderNames.CONTENT_TYPE, "application/dns-message")
+                        .set(HttpHeaderNames.CONTENT_LENGTH, content.readableBytes());
+                ctx.write(response);
+                request.release();
+            }
+            requests.clear();
+            batch = 1;
+            ctx.flush();
+        }
+    }
+}
@@ -22,6 +22,8 @@ import io.github.krlvm.powertunnel.desktop.BuildConstants;
 import io.github.krlvm.powertunnel.desktop.configuration.ServerConfiguration;
 import io.github.krlvm.powertunnel.desktop.managers.ConsoleHandler;
 import io.github.krlvm.powertunnel.desktop.utilities.SystemUtility;
+import io.github.krlvm.powertunnel.listener.ListenerLatency;
+import io.github.krlvm.powertunnel.resolver.DNSCacheStats;
 import io.github.krlvm.powertunnel.mitm.MITMAuthority;
 import io.github.krlvm.powertunnel.plugin.PluginLoader;
 import io.github.krlvm.powertunnel.sdk.ServerListener;
@@ -44,6 +46,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
 import java.util.function.Consumer;
@@ -217,6 +221,7 @@ public abstract class DesktopApp implements ServerListener {
                 }
 
                 proxy.setAllowRequestsToOriginServer(configuration.getBoolean("allow_requests_to_origin_server", true));
+                server.setDispatchMode(getDispatchMode());
             } catch (Exception ex) {
                 initializationException = ex;
             }
@@ -228,6 +233,16 @@ public abstract class DesktopApp implements ServerListener {
         }
     }
 
+    private DispatchMode getDispatchMode() {
+        final String value = configuration.get("dispatch_mode", DispatchMode.FULL.name());
+        try {
+            return DispatchMode.valueOf(value.trim().toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException ex) {
+            LOGGER.warn("Unknown dispatch mode '{}', falling back to {}", value, DispatchMode.FULL);
+            return DispatchMode.FULL;
+        }
+    }
+
     @Override
     public void onProxyStatusChanged(@NotNull ProxyStatus status) {
         if (status == ProxyStatus.STOPPING || status == ProxyStatus.NOT_RUNNING) {
@@ -278,6 +293,36 @@ public abstract class DesktopApp implements ServerListener {
                 stop();
             }
         }, "", "shutdown proxy server");
+        getConsoleReader().registerAppCommand("stats", args -> {
+            if (args.length != 1 || !("plugins".equalsIgnoreCase(args[0]) || "dns".equalsIgnoreCase(args[0]))) {
+                System.err.println("Usage: stats <plugins|dns>");
+                return;
+            }
+            if (!isRunning()) {
+                System.err.println("Proxy Server is not running");
+                return;
+            }
+            if ("dns".equalsIgnoreCase(args[0])) {
+                final DNSCacheStats stats = server.getDNSCacheStats();
+                if (stats == null) return;
+                System.out.println();
+                System.out.printf("%10s %10s %10s %10s %10s %10s%n", "Hits", "Negative", "Misses", "Prefetches", "Listener", "Hosts");
+                System.out.printf("%10d %10d %10d %10d %10d %10d%n",
+                        stats.getHits(), stats.getNegativeHits(), stats.getMisses(), stats.getPrefetches(),
+                        stats.getListenerHits(), stats.getSize());
+                System.out.println();
+                return;
+            }
+            final List<ListenerLatency> latencies = server.getProxyListenerLatencies();
+            System.out.println();
+            System.out.printf("%-24s %-28s %-30s %10s %10s %10s %10s %10s%n", "Plugin", "Listener", "Hook", "Calls", "Decided", "p50 (us)", "p99 (us)", "Max (us)");
+            for (ListenerLatency latency : latencies) {
+                System.out.printf("%-24s %-28s %-30s %10d %10d %10.1f %10.1f %10.1f%n",
+                        latency.getPluginId(), latency.getListenerName(), latency.getHook().getMethodName(), latency.getCount(),
+                        latency.getDecisions(), latency.getP50() / 1000D, latency.getP99() / 1000D, latency.getMax() / 1000D);
+            }
+            System.out.println();
+        }, "<plugins|dns>", "print latency statistics of plugins or DNS cache statistics");
         getConsoleReader().registerAppCommand("exit", args -> {
             System.exit(0);
         }, "", "terminate proxy server and exit");
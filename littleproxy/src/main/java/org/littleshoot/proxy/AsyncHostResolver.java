@@ -0,0 +1,65 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.littleshoot.proxy;
+
+import io.netty.channel.EventLoop;
+import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.Promise;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * {@link HostResolver} that resolves hosts without blocking the calling thread.
+ * When the server resolver implements this interface, connections to the server
+ * are resolved as a part of the connection flow instead of the thread reading from the client.
+ */
+public interface AsyncHostResolver extends HostResolver {
+
+    /**
+     * Resolves the host
+     *
+     * @param host host
+     * @param port port
+     * @param eventLoop event loop of the connection that will use the address
+     * @return future completed with a resolved address, or failed with {@link java.net.UnknownHostException}
+     */
+    Future<InetSocketAddress> resolveAsync(String host, int port, EventLoop eventLoop);
+
+    /**
+     * Resolves all addresses of the host, connections to the server are raced across them
+     *
+     * @param host host
+     * @param port port
+     * @param eventLoop event loop of the connection that will use the addresses
+     * @return future completed with a non-empty list of resolved addresses,
+     *         or failed with {@link java.net.UnknownHostException}
+     */
+    default Future<List<InetSocketAddress>> resolveAllAsync(String host, int port, EventLoop eventLoop) {
+        final Promise<List<InetSocketAddress>> promise = eventLoop.newPromise();
+        resolveAsync(host, port, eventLoop).addListener((Future<InetSocketAddress> future) -> {
+            if (future.isSuccess()) {
+                promise.trySuccess(Collections.singletonList(future.getNow()));
+            } else {
+                promise.tryFailure(future.cause());
+            }
+        });
+        return promise;
+    }
+}
@@ -223,11 +223,14 @@
 
 package org.littleshoot.proxy;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.*;
 import org.littleshoot.proxy.impl.ProxyUtils;
 
 import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 /**
  * <p>
@@ -442,6 +445,54 @@ public interface HttpFilters {
 
     // MODIFIED
     void saveAddress(String hostAndPort, boolean isCONNECT);
+    /**
+     * Filters requests on their way from the client to the proxy asynchronously.
+     * Reading from the client is paused until the returned stage is completed,
+     * the result of the stage is handled like the result of {@link #clientToProxyRequest(HttpObject)}.
+     *
+     * @param httpObject Client to Proxy HttpRequest (and HttpContent, if chunked)
+     * @return stage of the client to proxy request filter result, or null to filter the request synchronously
+     */
+    CompletionStage<HttpResponse> clientToProxyRequestAsync(HttpObject httpObject);
+    /**
+     * Filters chunks of a streamed request body on their way from the proxy to the server.
+     *
+     * @param chunk Client to Proxy HttpContent
+     * @return chunk to send to the server, the original chunk or a replacement
+     */
+    HttpContent proxyToServerRequestChunk(HttpContent chunk);
+    /**
+     * Decides whether the response has to be aggregated before it is filtered.
+     * Called once per response when its headers are received and response
+     * buffering is enabled, responses that are not aggregated are streamed.
+     *
+     * @param response Server to Proxy HttpResponse without its content
+     * @return true to aggregate the response, false to stream it
+     */
+    boolean shouldAggregateResponse(HttpResponse response);
+    /**
+     * Splits the first raw packet sent to the server, or the encoded head of a plain HTTP request,
+     * into fragments, each fragment is sent in its own TCP segment.
+     * The packet must be neither modified nor released, fragments hold their own references.
+     *
+     * @param buf first raw packet
+     * @return fragments, empty list to send the packet as is, or null to split the packet by {@link #chunkSize()}
+     */
+    List<ByteBuf> fragmentRaw(ByteBuf buf);
+    /**
+     * Returns delay between fragments returned by {@link #fragmentRaw(ByteBuf)}
+     *
+     * @return delay in nanoseconds, 0 to send the fragments at once
+     */
+    long fragmentationDelayNanos();
+    /**
+     * Reports whether the server answered after the first raw packet or plain HTTP request had been sent.
+     * Called at most once per connection to the server: with true when the first bytes of the answer are read,
+     * with false when the connection is closed or times out before that or the answer is a TLS alert.
+     *
+     * @param answered whether the server answered
+     */
+    void serverToProxyFirstAnswer(boolean answered);
     int chunkSize();
     boolean fullChunking();
     String mitmGetSNI(String hostname);
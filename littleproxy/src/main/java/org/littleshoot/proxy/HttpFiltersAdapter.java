@@ -223,12 +223,16 @@
 
 package org.littleshoot.proxy;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpObject;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpResponse;
 
 import java.net.InetSocketAddress;
+import java.util.List;
+import java.util.concurrent.CompletionStage;
 
 /**
  * Convenience base class for implementations of {@link HttpFilters}.
@@ -331,11 +335,40 @@ public class HttpFiltersAdapter implements HttpFilters {
     public void saveAddress(String hostAndPort, boolean isCONNECT) {
     }
 
+    @Override
+    public CompletionStage<HttpResponse> clientToProxyRequestAsync(HttpObject httpObject) {
+        return null;
+    }
+
+    @Override
+    public HttpContent proxyToServerRequestChunk(HttpContent chunk) {
+        return chunk;
+    }
+
+    @Override
+    public boolean shouldAggregateResponse(HttpResponse response) {
+        return true;
+    }
+
     @Override
     public boolean proxyToServerAllowMitm() {
         return true;
     }
 
+    @Override
+    public List<ByteBuf> fragmentRaw(ByteBuf buf) {
+        return null;
+    }
+
+    @Override
+    public long fragmentationDelayNanos() {
+        return 0;
+    }
+
+    @Override
+    public void serverToProxyFirstAnswer(boolean answered) {
+    }
+
     @Override
     public int chunkSize() {
         return 0;
@@ -249,6 +249,7 @@ import io.netty.handler.codec.http.HttpUtil;
 import io.netty.handler.codec.http.HttpVersion;
 import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.Future;
 import org.apache.commons.lang3.StringUtils;
@@ -266,12 +267,15 @@ import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.Charset;
+import java.util.ArrayDeque;
 import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -464,6 +468,9 @@ public class ClientToProxyConnection extends ProxyConnection<HttpRequest> {
      */
     // MODIFIED
     private boolean isInitialRequestCONNECT = false;
+    // MODIFIED
+    private boolean awaitingAsyncFilter = false;
+    private final Queue<Object> deferredReads = new ArrayDeque<>();
     private ConnectionState doReadHTTPInitial(HttpRequest httpRequest) {
         // Make a copy of the original request
         this.currentRequest = copy(httpRequest);
@@ -487,9 +494,19 @@ public class ClientToProxyConnection extends ProxyConnection<HttpRequest> {
         }
         currentFilters.saveAddress(serverHostAndPort, isInitialRequestCONNECT);
 
+        // MODIFIED
+        CompletionStage<HttpResponse> clientToProxyFilterStage = currentFilters.clientToProxyRequestAsync(httpRequest);
+        if (clientToProxyFilterStage != null) {
+            return awaitClientToProxyRequest(httpRequest, serverHostAndPort, clientToProxyFilterStage);
+        }
+
         // Send the request through the clientToProxyRequest filter, and respond with the short-circuit response if required
-        HttpResponse clientToProxyFilterResponse = currentFilters.clientToProxyRequest(httpRequest);
+        return continueReadHTTPInitial(httpRequest, serverHostAndPort, currentFilters.clientToProxyRequest(httpRequest));
+    }
 
+    // MODIFIED
+    private ConnectionState continueReadHTTPInitial(HttpRequest httpRequest, String serverHostAndPort,
+                                                    HttpResponse clientToProxyFilterResponse) {
         if (clientToProxyFilterResponse != null) {
             LOG.debug("Responding to client with short-circuit response from filter: {}", clientToProxyFilterResponse);
 
@@ -640,12 +657,89 @@ public class ClientToProxyConnection extends ProxyConnection<HttpRequest> {
         return !ABSOLUTE_URI_PATTERN.matcher(uri).matches();
     }
 
+    // MODIFIED -->
+    /**
+     * Pauses reading from the client until the asynchronous clientToProxyRequest filter completes,
+     * the messages that are already decoded are deferred and read after the filter completes
+     */
+    private ConnectionState awaitClientToProxyRequest(HttpRequest httpRequest, String serverHostAndPort,
+                                                      CompletionStage<HttpResponse> stage) {
+        LOG.debug("Waiting for asynchronous clientToProxyRequest filter");
+        awaitingAsyncFilter = true;
+        stopReading();
+        ReferenceCountUtil.retain(httpRequest);
+
+        stage.whenComplete((response, cause) -> ctx.executor().execute(() -> {
+            awaitingAsyncFilter = false;
+            try {
+                if (!channel.isActive()) {
+                    releaseDeferredReads();
+                    return;
+                }
+                if (cause != null) {
+                    LOG.error("Asynchronous clientToProxyRequest filter failed", cause);
+                }
+                become(continueReadHTTPInitial(httpRequest, serverHostAndPort, cause == null ? response : null));
+            } finally {
+                ReferenceCountUtil.release(httpRequest);
+            }
+            if (numberOfCurrentlyConnectingServers.get() == 0) {
+                resumeReading();
+            }
+        }));
+        return AWAITING_INITIAL;
+    }
+
+    @Override
+    protected void read(Object msg) {
+        if (awaitingAsyncFilter || !deferredReads.isEmpty()) {
+            deferredReads.add(ReferenceCountUtil.retain(msg));
+            return;
+        }
+        super.read(msg);
+    }
+
+    @Override
+    protected void resumeReading() {
+        if (awaitingAsyncFilter) return;
+        super.resumeReading();
+        if (!deferredReads.isEmpty()) {
+            ctx.executor().execute(this::readDeferred);
+        }
+    }
+
+    private void readDeferred() {
+        Object msg;
+        while (!awaitingAsyncFilter && numberOfCurrentlyConnectingServers.get() == 0
+                && (msg = deferredReads.poll()) != null) {
+            try {
+                super.read(msg);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+    }
+
+    private void releaseDeferredReads() {
+        Object msg;
+        while ((msg = deferredReads.poll()) != null) {
+            ReferenceCountUtil.release(msg);
+        }
+    }
+    // MODIFIED <--
+
     @Override
     protected void readHTTPChunk(HttpContent chunk) {
         currentFilters.clientToProxyRequest(chunk);
         currentFilters.proxyToServerRequest(chunk);
 
-        currentServerConnection.write(chunk);
+        // MODIFIED
+        HttpContent filteredChunk = currentFilters.proxyToServerRequestChunk(chunk);
+        currentServerConnection.write(filteredChunk);
+        if (filteredChunk != chunk) {
+            // the replacement is retained by write, the original is released after reading
+            ReferenceCountUtil.release(filteredChunk);
+        }
     }
 
     @Override
@@ -682,6 +776,8 @@ public class ClientToProxyConnection extends ProxyConnection<HttpRequest> {
         }
         this.currentRequest = null;
 
+        // MODIFIED
+        final HttpObject receivedObject = httpObject;
         httpObject = filters.serverToProxyResponse(httpObject);
         if (httpObject == null) {
             forceDisconnect(serverConnection);
@@ -726,6 +822,11 @@ public class ClientToProxyConnection extends ProxyConnection<HttpRequest> {
         }
 
         write(httpObject);
+        // MODIFIED
+        if (httpObject != receivedObject) {
+            // the replacement is retained by write, the received object is released after reading
+            ReferenceCountUtil.release(httpObject);
+        }
 
         if (ProxyUtils.isLastChunk(httpObject)) {
             writeEmptyBuffer();
@@ -808,6 +909,7 @@ public class ClientToProxyConnection extends ProxyConnection<HttpRequest> {
     @Override
     protected void disconnected() {
         super.disconnected();
+        releaseDeferredReads(); // MODIFIED
         for (ProxyToServerConnection serverConnection : serverConnectionsByHostAndPort
                 .values()) {
             serverConnection.disconnect();
@@ -226,17 +226,20 @@ package org.littleshoot.proxy.impl;
 import com.google.common.net.HostAndPort;
 import io.netty.bootstrap.Bootstrap;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandler;
 import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.EventLoop;
 import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.channel.udt.nio.NioUdtProvider;
+import io.netty.handler.codec.EncoderException;
 import io.netty.handler.codec.haproxy.HAProxyMessage;
 import io.netty.handler.codec.http.FullHttpResponse;
 import io.netty.handler.codec.http.HttpContent;
@@ -278,9 +281,14 @@ import io.netty.handler.timeout.IdleStateHandler;
 import io.netty.handler.traffic.GlobalTrafficShapingHandler;
 import io.netty.resolver.AddressResolverGroup;
 import io.netty.resolver.DefaultAddressResolverGroup;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.ReferenceCounted;
 import io.netty.util.concurrent.Future;
+import io.netty.util.concurrent.ImmediateEventExecutor;
+import io.netty.util.concurrent.Promise;
+import io.netty.util.concurrent.PromiseCombiner;
 import org.littleshoot.proxy.ActivityTracker;
+import org.littleshoot.proxy.AsyncHostResolver;
 import org.littleshoot.proxy.ChainedProxy;
 import org.littleshoot.proxy.ChainedProxyAdapter;
 import org.littleshoot.proxy.ChainedProxyManager;
@@ -299,12 +307,17 @@ import javax.net.ssl.SSLSession;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.UnknownHostException;
+import java.nio.channels.ClosedChannelException;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static org.littleshoot.proxy.impl.ConnectionState.AWAITING_CHUNK;
 import static org.littleshoot.proxy.impl.ConnectionState.AWAITING_CONNECT_OK;
@@ -498,6 +511,7 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
             httpResponse = substituteResponse;
         }
 
+        reportFirstAnswer(true); // MODIFIED
         currentFilters.serverToProxyResponseReceiving();
 
         rememberCurrentResponse(httpResponse);
@@ -519,6 +533,7 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
 
     @Override
     protected void readRaw(ByteBuf buf) {
+        reportFirstAnswer(!isTlsAlert(buf)); // MODIFIED
         clientConnection.write(buf);
     }
 
@@ -622,7 +637,14 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
             // Remember that we issued this HttpRequest for later
             currentHttpRequest = (HttpRequest) httpObject;
         }
-        super.writeHttp(httpObject);
+        // MODIFIED
+        if (ProxyUtils.isLastChunk(httpObject)) {
+            // ProxyConnection writes the last chunk to the channel directly,
+            // it has to wait behind delayed fragments like other writes, see writeOrQueue
+            writeToChannel(httpObject);
+        } else {
+            super.writeHttp(httpObject);
+        }
     }
 
     /* *************************************************************************
@@ -665,11 +687,13 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
     @Override
     protected void becameWritable() {
         super.becameWritable();
+        flushPendingWrites(); // MODIFIED
         this.clientConnection.serverBecameWriteable(this);
     }
 
     @Override
     protected void timedOut() {
+        reportFirstAnswer(false); // MODIFIED
         super.timedOut();
         clientConnection.timedOut(this);
     }
@@ -677,6 +701,8 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
     @Override
     protected void disconnected() {
         super.disconnected();
+        releasePendingWrites(); // MODIFIED
+        reportFirstAnswer(false); // MODIFIED
         if (this.chainedProxy != null) {
             // Let the ChainedProxy know that we disconnected
             try {
@@ -695,6 +721,8 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
                 LOG.info("A ProxyConnectException occurred on ProxyToServerConnection: " + cause.getMessage());
                 connectionFlow.fail(cause);
             } else if (cause instanceof IOException) {
+                // a reset by the server is a failure, the disconnect below is not reported
+                reportFirstAnswer(false); // MODIFIED
                 // IOExceptions are expected errors, for example when a server drops the connection. rather than flood
                 // the logs with stack traces for these expected exceptions, log the message at the INFO level and the
                 // stack trace at the DEBUG level.
@@ -892,8 +920,9 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
 
         @Override
         protected Future<?> execute() {
+            final EventLoop loop = proxyServer.getProxyToServerWorkerFor(transportProtocol).next(); // MODIFIED
             Bootstrap cb = new Bootstrap()
-                    .group(proxyServer.getProxyToServerWorkerFor(transportProtocol))
+                    .group(loop) // MODIFIED
                     .resolver(remoteAddressResolver);
 
             switch (transportProtocol) {
@@ -918,6 +947,9 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
             cb.option(ChannelOption.CONNECT_TIMEOUT_MILLIS,
                     proxyServer.getConnectTimeout());
 
+            if (remoteAddress.isUnresolved() && proxyServer.getServerResolver() instanceof AsyncHostResolver) { // MODIFIED
+                return resolveAndConnect(cb, loop);                                                             // MODIFIED
+            }                                                                                                   // MODIFIED
             if (localAddress != null) {
                 return cb.connect(remoteAddress, localAddress);
             } else {
@@ -1279,6 +1311,23 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
             // Report DNS resolution to HttpFilters
             this.remoteAddress = this.currentFilters.proxyToServerResolutionStarted(serverHostAndPort);
 
+            // MODIFIED
+            if (proxyServer.getServerResolver() instanceof AsyncHostResolver
+                    && (this.remoteAddress == null || this.remoteAddress.isUnresolved())) {
+                // the address is resolved by ConnectChannel without blocking the thread reading from the client
+                if (this.remoteAddress == null) {
+                    try {
+                        this.remoteAddress = unresolvedAddressFor(serverHostAndPort);
+                    } catch (IllegalArgumentException e) {
+                        this.currentFilters.proxyToServerResolutionFailed(serverHostAndPort);
+                        throw new UnknownHostException(serverHostAndPort);
+                    }
+                }
+                this.localAddress = proxyServer.getLocalAddress();
+                return;
+            }
+            // MODIFIED
+
             // save the hostname and port of the unresolved address in hostAndPort, in case name resolution fails
             String hostAndPort = null;
             try {
@@ -1330,7 +1379,7 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
         if ( proxyServer.isSendProxyProtocol()) {
             pipeline.addLast(HTTP_PROXY_ENCODER_NAME, new HAProxyMessageEncoder());
         }
-        pipeline.addLast(HTTP_ENCODER_NAME, new HttpRequestEncoder());
+        pipeline.addLast(HTTP_ENCODER_NAME, new FragmentingHttpRequestEncoder()); // MODIFIED
         pipeline.addLast(HTTP_DECODER_NAME, new HeadAwareHttpResponseDecoder(
                 proxyServer.getMaxInitialLineLength(),
                 proxyServer.getMaxHeaderSize(),
@@ -1340,7 +1389,7 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
         int numberOfBytesToBuffer = proxyServer.getFiltersSource()
                 .getMaximumResponseBufferSizeInBytes();
         if (numberOfBytesToBuffer > 0) {
-            aggregateContentForFiltering(pipeline, numberOfBytesToBuffer);
+            pipeline.addLast("aggregator", new SelectiveAggregator(numberOfBytesToBuffer)); // MODIFIED
         }
 
         pipeline.addLast(HTTP_RESPONSE_READ_MONITOR_NAME, responseReadMonitor);
@@ -1517,32 +1566,446 @@ public class ProxyToServerConnection extends ProxyConnection<HttpResponse> {
     // MODIFIED
 
     private boolean _powerTunnelIsChunked = false;
+    // writes held back while fragments are waiting for the channel to become writable,
+    // accessed only from the event loop of the channel
+    private final Queue<PendingWrite> _powerTunnelPendingWrites = new ArrayDeque<>();
+    // whether delayed fragments are being sent, accessed only from the event loop of the channel
+    private boolean _powerTunnelPacing = false;
+    // whether the server has answered after the first packet, see HttpFilters#serverToProxyFirstAnswer
+    private final AtomicInteger _powerTunnelFirstAnswer = new AtomicInteger(FIRST_PACKET_NOT_SENT);
+    private static final int FIRST_PACKET_NOT_SENT = 0, FIRST_ANSWER_AWAITED = 1, FIRST_ANSWER_REPORTED = 2;
+    // delay before the next address is tried while the previous connection attempt is in progress (RFC 8305)
+    private static final long CONNECTION_ATTEMPT_DELAY_MILLIS = 250;
 
     @Override
     protected void writeRaw(ByteBuf buf) {
+        _powerTunnelFirstAnswer.compareAndSet(FIRST_PACKET_NOT_SENT, FIRST_ANSWER_AWAITED);
         if(!_powerTunnelIsChunked) {
-            final int chunkSize = currentFilters.chunkSize();
-            if(chunkSize > 0) {
+            List<ByteBuf> fragments = currentFilters.fragmentRaw(buf);
+            long delayNanos = 0;
+            if(fragments != null) {
+                delayNanos = currentFilters.fragmentationDelayNanos();
+            } else {
+                final int chunkSize = currentFilters.chunkSize();
+                if(chunkSize > 0) fragments = chunk(buf, chunkSize, currentFilters.fullChunking());
+            }
+            if(fragments != null) {
                 _powerTunnelIsChunked = true;
+                if(!fragments.isEmpty()) {
+                    writeFragments(buf, fragments, delayNanos);
+                    return;
+                }
+            }
+        }
+        writeToChannel(buf);
+    }
+
+    /**
+     * Splits the buffer into slices sharing its memory
+     */
+    private static List<ByteBuf> chunk(ByteBuf buf, int chunkSize, boolean fullChunking) {
+        final int start = buf.readerIndex(), end = buf.writerIndex();
+        if(end - start <= chunkSize) return Collections.emptyList();
+        if(!fullChunking) {
+            return Arrays.asList(buf.retainedSlice(start, chunkSize), buf.retainedSlice(start + chunkSize, end - start - chunkSize));
+        }
+        final List<ByteBuf> fragments = new ArrayList<>((end - start - 1) / chunkSize + 1);
+        for (int i = start; i < end; i += chunkSize) {
+            fragments.add(buf.retainedSlice(i, Math.min(chunkSize, end - i)));
+        }
+        return fragments;
+    }
 
-                final byte[] bytes = new byte[buf.readableBytes()];
-                buf.readBytes(bytes);
-                final int len = bytes.length;
+    /**
+     * Writes the fragments of the buffer,
+     * each fragment is flushed separately, so it is sent in its own TCP segment
+     *
+     * When there is a delay, each next fragment is scheduled on the event loop
+     * after the previous one has been written, other writes wait until the last fragment is sent
+     */
+    private void writeFragments(ByteBuf buf, List<ByteBuf> fragments, long delayNanos) {
+        channel.config().setOption(ChannelOption.TCP_NODELAY, true);
+        try {
+            if(delayNanos > 0 && fragments.size() > 1) {
+                final EventLoop loop = channel.eventLoop();
+                if(loop.inEventLoop()) {
+                    writePaced(fragments, 0, delayNanos);
+                } else {
+                    loop.execute(() -> writePaced(fragments, 0, delayNanos));
+                }
+                return;
+            }
+            for (ByteBuf fragment : fragments) {
+                writeOrQueue(fragment, channel.newPromise(), true);
+            }
+        } finally {
+            // the buffer was retained for the write, fragments hold their own references
+            buf.release();
+        }
+    }
+
+    private void writePaced(List<ByteBuf> fragments, int index, long delayNanos) {
+        final boolean last = index == fragments.size() - 1;
+        _powerTunnelPacing = !last;
+        channel.writeAndFlush(fragments.get(index)).addListener((ChannelFutureListener) future -> {
+            if(last) {
+                flushPendingWrites();
+            } else if(future.isSuccess()) {
+                channel.eventLoop().schedule(() -> writePaced(fragments, index + 1, delayNanos),
+                        delayNanos, TimeUnit.NANOSECONDS);
+            } else {
+                _powerTunnelPacing = false;
+                for (int i = index + 1; i < fragments.size(); i++) fragments.get(i).release();
+            }
+        });
+    }
 
-                if (currentFilters.fullChunking()) {
-                    int i = 0;
-                    while (i < len) {
-                        writeToChannel(Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, i, i += chunkSize)));
+    @Override
+    protected ChannelFuture writeToChannel(Object msg) {
+        final ChannelPromise promise = channel.newPromise();
+        writeOrQueue(msg, promise, false);
+        return promise;
+    }
+
+    private void writeOrQueue(Object msg, ChannelPromise promise, boolean fragment) {
+        final EventLoop loop = channel.eventLoop();
+        if(!loop.inEventLoop()) {
+            loop.execute(() -> writeOrQueue(msg, promise, fragment));
+            return;
+        }
+        // fragments respect backpressure, other writes only keep the order
+        if(!_powerTunnelPacing && _powerTunnelPendingWrites.isEmpty() && (!fragment || channel.isWritable())) {
+            channel.writeAndFlush(msg, promise);
+        } else {
+            _powerTunnelPendingWrites.add(new PendingWrite(msg, promise));
+        }
+    }
+
+    private void flushPendingWrites() {
+        if(_powerTunnelPacing) return;
+        PendingWrite pending;
+        while (channel.isWritable() && (pending = _powerTunnelPendingWrites.poll()) != null) {
+            channel.writeAndFlush(pending.msg, pending.promise);
+        }
+    }
+
+    private void releasePendingWrites() {
+        PendingWrite pending;
+        while ((pending = _powerTunnelPendingWrites.poll()) != null) {
+            ReferenceCountUtil.release(pending.msg);
+            pending.promise.tryFailure(new ClosedChannelException());
+        }
+    }
+
+    /**
+     * Resolves the remote address with the {@link AsyncHostResolver} of the server and connects to it,
+     * when the host has several addresses connections to them are raced, see {@link ConnectionRace}.
+     * The returned future is completed when the connection is established
+     */
+    private Future<?> resolveAndConnect(Bootstrap cb, EventLoop loop) {
+        final Promise<Void> promise = loop.newPromise();
+        final InetSocketAddress unresolved = remoteAddress;
+        final String hostAndPort = HostAndPort.fromParts(unresolved.getHostString(), unresolved.getPort()).toString();
+        ((AsyncHostResolver) proxyServer.getServerResolver())
+                .resolveAllAsync(unresolved.getHostString(), unresolved.getPort(), loop)
+                .addListener((Future<List<InetSocketAddress>> resolution) -> {
+                    try {
+                        connectResolved(cb, loop, hostAndPort, resolution, promise);
+                    } catch (Exception ex) {
+                        promise.tryFailure(ex);
                     }
+                });
+        return promise;
+    }
+
+    private void connectResolved(Bootstrap cb, EventLoop loop, String hostAndPort,
+                                 Future<List<InetSocketAddress>> resolution, Promise<Void> promise) {
+        final List<InetSocketAddress> addresses = resolution.isSuccess()
+                ? interleaveAddressFamilies(raceableAddresses(resolution.getNow()))
+                : Collections.emptyList();
+        if (addresses.isEmpty()) {
+            LOG.debug("Unable to resolve {}", hostAndPort);
+            currentFilters.proxyToServerResolutionFailed(hostAndPort);
+            promise.tryFailure(resolution.isSuccess() ? new UnknownHostException(hostAndPort) : resolution.cause());
+            return;
+        }
+        remoteAddress = addresses.get(0);
+        currentFilters.proxyToServerResolutionSucceeded(serverHostAndPort, remoteAddress);
+
+        if (addresses.size() > 1) {
+            new ConnectionRace(cb, loop, addresses, promise).attempt();
+            return;
+        }
+        final ChannelFuture connect = localAddress != null
+                ? cb.connect(remoteAddress, localAddress)
+                : cb.connect(remoteAddress);
+        connect.addListener(future -> {
+            if (future.isSuccess()) {
+                promise.trySuccess(null);
+            } else {
+                promise.tryFailure(future.cause());
+            }
+        });
+    }
+
+    /**
+     * Drops unresolved addresses (listeners can respond with them), they can't be ordered by family.
+     * When no address is resolved the first one is kept, the bootstrap resolves it on connect
+     */
+    private static List<InetSocketAddress> raceableAddresses(List<InetSocketAddress> addresses) {
+        if (addresses == null || addresses.isEmpty()) return Collections.emptyList();
+        final List<InetSocketAddress> resolved = new ArrayList<>(addresses.size());
+        for (InetSocketAddress address : addresses) {
+            if (!address.isUnresolved()) resolved.add(address);
+        }
+        return resolved.isEmpty() ? Collections.singletonList(addresses.get(0)) : resolved;
+    }
+
+    /**
+     * Orders addresses so that the address families alternate,
+     * starting with the family of the first address (RFC 8305, section 4)
+     */
+    private static List<InetSocketAddress> interleaveAddressFamilies(List<InetSocketAddress> addresses) {
+        if (addresses.size() < 2) return addresses;
+        final List<InetSocketAddress> first = new ArrayList<>(), second = new ArrayList<>();
+        final Class<?> firstFamily = addresses.get(0).getAddress().getClass();
+        for (InetSocketAddress address : addresses) {
+            (address.getAddress().getClass() == firstFamily ? first : second).add(address);
+        }
+        final List<InetSocketAddress> interleaved = new ArrayList<>(addresses.size());
+        for (int i = 0; i < Math.max(first.size(), second.size()); i++) {
+            if (i < first.size()) interleaved.add(first.get(i));
+            if (i < second.size()) interleaved.add(second.get(i));
+        }
+        return interleaved;
+    }
+
+    @Override
+    Future<Void> disconnect() {
+        // the proxy closes the connection itself, for instance because the client has gone,
+        // it says nothing about whether the server would have answered
+        _powerTunnelFirstAnswer.compareAndSet(FIRST_ANSWER_AWAITED, FIRST_ANSWER_REPORTED);
+        // there is no channel when the address could not be resolved or no connection attempt succeeded
+        if (channel == null) return ImmediateEventExecutor.INSTANCE.newSucceededFuture(null);
+        return super.disconnect();
+    }
+
+    /**
+     * Races connections to the resolved addresses (RFC 8305): the next address is tried
+     * when the previous attempt fails or {@link #CONNECTION_ATTEMPT_DELAY_MILLIS} after it has started.
+     * The first established connection wins, the other attempts are cancelled.
+     *
+     * Attempts are made with bare channels, the pipeline of this connection is initialized
+     * on the winning channel only. Accessed only from the event loop the channels are registered on.
+     */
+    private class ConnectionRace {
+
+        private final Bootstrap bootstrap;
+        private final EventLoop loop;
+        private final List<InetSocketAddress> addresses;
+        private final Promise<Void> promise;
+
+        private final List<ChannelFuture> attempts = new ArrayList<>();
+        private int failed = 0;
+        private Future<?> nextAttempt;
+
+        private ConnectionRace(Bootstrap cb, EventLoop loop, List<InetSocketAddress> addresses, Promise<Void> promise) {
+            this.bootstrap = cb.clone().handler(new ChannelInitializer<Channel>() {
+                protected void initChannel(Channel ch) {
+                }
+            });
+            this.loop = loop;
+            this.addresses = addresses;
+            this.promise = promise;
+        }
+
+        private void attempt() {
+            if (promise.isDone() || attempts.size() == addresses.size()) return;
+            if (nextAttempt != null) nextAttempt.cancel(false);
+
+            final InetSocketAddress address = addresses.get(attempts.size());
+            final ChannelFuture attempt = localAddress != null
+                    ? bootstrap.connect(address, localAddress)
+                    : bootstrap.connect(address);
+            attempts.add(attempt);
+            attempt.addListener((ChannelFuture future) -> attemptCompleted(future, address));
+            if (attempts.size() < addresses.size()) {
+                nextAttempt = loop.schedule(this::attempt, CONNECTION_ATTEMPT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void attemptCompleted(ChannelFuture future, InetSocketAddress address) {
+            if (promise.isDone()) {
+                // another attempt has won
+                future.channel().close();
+                return;
+            }
+            if (!future.isSuccess()) {
+                LOG.debug("Unable to connect to {}", address, future.cause());
+                if (++failed == addresses.size()) {
+                    promise.tryFailure(future.cause());
                 } else {
-                    writeToChannel(Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, 0, chunkSize)));
-                    writeToChannel(Unpooled.wrappedBuffer(Arrays.copyOfRange(bytes, chunkSize, len)));
+                    attempt();
+                }
+                return;
+            }
+
+            if (nextAttempt != null) nextAttempt.cancel(false);
+            remoteAddress = address;
+            final Channel channel = future.channel();
+            initChannelPipeline(channel.pipeline(), initialRequest);
+            // the connection has been added after the channel was registered and became active
+            channel.pipeline().fireChannelRegistered();
+            channel.pipeline().fireChannelActive();
+            promise.trySuccess(null);
+
+            for (ChannelFuture attempt : attempts) {
+                if (attempt != future) attempt.channel().close();
+            }
+        }
+    }
+
+    private void reportFirstAnswer(boolean answered) {
+        if(!_powerTunnelFirstAnswer.compareAndSet(FIRST_ANSWER_AWAITED, FIRST_ANSWER_REPORTED)) return;
+        final HttpFilters filters = currentFilters;
+        if(filters != null) filters.serverToProxyFirstAnswer(answered);
+    }
+
+    /**
+     * Returns whether the buffer starts with a TLS alert record,
+     * servers (or middleboxes impersonating them) answer with an alert to a rejected ClientHello
+     */
+    private static boolean isTlsAlert(ByteBuf buf) {
+        return buf.isReadable() && buf.getUnsignedByte(buf.readerIndex()) == 21;
+    }
+
+    private static class PendingWrite {
+        private final Object msg;
+        private final ChannelPromise promise;
+
+        private PendingWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+
+    /**
+     * Request encoder sending the encoded head of each plain HTTP request
+     * in fragments returned by {@link HttpFilters#fragmentRaw(ByteBuf)},
+     * each fragment is flushed separately, so it is sent in its own TCP segment
+     */
+    private class FragmentingHttpRequestEncoder extends HttpRequestEncoder {
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            final HttpFilters filters = currentFilters;
+            // requests of MITM connections are encrypted, there's no point in splitting them
+            if (!(msg instanceof HttpRequest) || filters == null || clientConnection.isMitming()) {
+                super.write(ctx, msg, promise);
+                return;
+            }
+            _powerTunnelFirstAnswer.compareAndSet(FIRST_PACKET_NOT_SENT, FIRST_ANSWER_AWAITED);
+
+            final List<Object> out = new ArrayList<>(2);
+            try {
+                encode(ctx, msg, out);
+            } catch (Throwable t) {
+                for (Object o : out) ReferenceCountUtil.release(o);
+                throw t instanceof EncoderException ? (EncoderException) t : new EncoderException(t);
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+
+            List<ByteBuf> fragments = null;
+            if (!out.isEmpty() && out.get(0) instanceof ByteBuf) {
+                final ByteBuf head = (ByteBuf) out.get(0);
+                fragments = filters.fragmentRaw(head);
+                if (fragments != null && !fragments.isEmpty()) {
+                    // fragments hold their own references
+                    out.remove(0);
+                    head.release();
                 }
+            }
 
+            if (fragments == null || fragments.isEmpty()) {
+                writeRest(ctx, out, promise);
                 return;
             }
+            ctx.channel().config().setOption(ChannelOption.TCP_NODELAY, true);
+            final long delayNanos = fragments.size() > 1 ? filters.fragmentationDelayNanos() : 0;
+            if (delayNanos > 0) {
+                // other writes of the connection wait until the last fragment is sent, see writeOrQueue
+                _powerTunnelPacing = true;
+                writePaced(ctx, fragments, 0, delayNanos, out, promise);
+                return;
+            }
+            final PromiseCombiner combiner = new PromiseCombiner(ctx.executor());
+            for (ByteBuf fragment : fragments) combiner.add(ctx.writeAndFlush(fragment));
+            for (Object o : out) combiner.add(ctx.write(o));
+            combiner.finish(promise);
+        }
+
+        /**
+         * Writes the fragment and schedules the next one after the delay,
+         * the rest of the request is written together with the last fragment
+         */
+        private void writePaced(ChannelHandlerContext ctx, List<ByteBuf> fragments, int index, long delayNanos,
+                                List<Object> rest, ChannelPromise promise) {
+            if (index == fragments.size() - 1) {
+                final ChannelPromise restPromise = ctx.newPromise();
+                final PromiseCombiner combiner = new PromiseCombiner(ctx.executor());
+                combiner.add(ctx.writeAndFlush(fragments.get(index)));
+                combiner.add((ChannelFuture) restPromise);
+                combiner.finish(promise);
+                writeRest(ctx, rest, restPromise);
+                _powerTunnelPacing = false;
+                flushPendingWrites();
+                return;
+            }
+            ctx.writeAndFlush(fragments.get(index)).addListener((ChannelFutureListener) future -> {
+                if (future.isSuccess()) {
+                    ctx.executor().schedule(() -> writePaced(ctx, fragments, index + 1, delayNanos, rest, promise),
+                            delayNanos, TimeUnit.NANOSECONDS);
+                } else {
+                    _powerTunnelPacing = false;
+                    for (int i = index + 1; i < fragments.size(); i++) fragments.get(i).release();
+                    for (Object o : rest) ReferenceCountUtil.release(o);
+                    promise.tryFailure(future.cause());
+                }
+            });
+        }
+
+        private void writeRest(ChannelHandlerContext ctx, List<Object> rest, ChannelPromise promise) {
+            final PromiseCombiner combiner = new PromiseCombiner(ctx.executor());
+            for (Object o : rest) combiner.add(ctx.write(o));
+            combiner.finish(promise);
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Aggregates only responses accepted by {@link HttpFilters#shouldAggregateResponse(HttpResponse)},
+     * other responses and their content pass through the aggregator untouched.
+     *
+     * The decision is made when the response headers arrive and lasts until the last content of the response.
+     * Aggregated content is not decompressed here, it is decoded by the filters only when it is accessed.
+     */
+    private class SelectiveAggregator extends HttpObjectAggregator {
+
+        private boolean aggregate = true;
+
+        private SelectiveAggregator(int maxContentLength) {
+            super(maxContentLength);
+        }
+
+        @Override
+        public boolean acceptInboundMessage(Object msg) throws Exception {
+            if (msg instanceof HttpResponse) {
+                final HttpFilters filters = currentFilters;
+                aggregate = filters == null || filters.shouldAggregateResponse((HttpResponse) msg);
+            }
+            return aggregate && super.acceptInboundMessage(msg);
         }
-        writeToChannel(buf);
     }
 
     // MODIFIED
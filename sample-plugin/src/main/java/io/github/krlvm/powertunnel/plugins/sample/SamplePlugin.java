@@ -17,6 +17,7 @@
 
 package io.github.krlvm.powertunnel.plugins.sample;
 
+import io.github.krlvm.powertunnel.sdk.http.HttpHeaderNames;
 import io.github.krlvm.powertunnel.sdk.http.ProxyRequest;
 import io.github.krlvm.powertunnel.sdk.http.ProxyResponse;
 import io.github.krlvm.powertunnel.sdk.plugin.PowerTunnelPlugin;
@@ -31,7 +32,7 @@ public class SamplePlugin extends PowerTunnelPlugin {
     @Override
     public void onProxyInitialization(ProxyServer proxy) {
         proxy.setMITMEnabled(true);
-        proxy.setFullResponse(true);
+        proxy.addFullResponseRule(null, "text/html");
         proxy.setFullRequest(true);
 
         this.registerProxyListener(new ProxyAdapter() {
@@ -53,8 +54,10 @@ public class SamplePlugin extends PowerTunnelPlugin {
                 if (!proxy.isMITMEnabled()) return;
                 if (!response.isDataPacket()) return;
 
-                if (!"text/html; charset=utf-8".equals(response.headers().get("Content-Type"))) return;
+                final String contentType = response.headers().get(HttpHeaderNames.CONTENT_TYPE);
+                if (contentType == null || !contentType.toLowerCase().startsWith("text/html")) return;
 
+                // content is transparently decoded from gzip and deflate
                 final byte[] raw = response.content();
                 final String str = new String(raw, StandardCharsets.UTF_8);
 
@@ -21,12 +21,15 @@ import io.github.krlvm.powertunnel.sdk.configuration.Configuration;
 import io.github.krlvm.powertunnel.sdk.exceptions.ProxyStartException;
 import io.github.krlvm.powertunnel.sdk.plugin.PluginInfo;
 import io.github.krlvm.powertunnel.sdk.plugin.PowerTunnelPlugin;
+import io.github.krlvm.powertunnel.sdk.proxy.DispatchMode;
+import io.github.krlvm.powertunnel.sdk.proxy.HostFilter;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyServer;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyStatus;
 import io.github.krlvm.powertunnel.sdk.types.PowerTunnelPlatform;
 import io.github.krlvm.powertunnel.sdk.types.VersionInfo;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 import java.io.File;
 import java.io.IOException;
@@ -76,12 +79,53 @@ public interface PowerTunnelServer {
      */
     void registerProxyListener(@NotNull PluginInfo pluginInfo, @NotNull ProxyListener listener, int priority);
 
+    /**
+     * Registers proxy server listener that is called
+     * only for the hosts matched by the host filter
+     *
+     * @param pluginInfo registrant plugin
+     * @param listener proxy server listeners
+     * @param priority proxy server listener priority
+     * @param hosts hosts the listener is subscribed to, null to subscribe to all hosts
+     */
+    void registerProxyListener(@NotNull PluginInfo pluginInfo, @NotNull ProxyListener listener, int priority, @Nullable HostFilter hosts);
+
     /**
      * Unregisters proxy server listener
      * @param listener registered proxy server listener
      */
     void unregisterProxyListener(@NotNull ProxyListener listener);
 
+    /**
+     * Sets how requests are dispatched to the proxy listeners
+     * once one of them has blocked the request or set a response,
+     * listeners can override it with {@link ProxyListener#getDispatchMode()}
+     *
+     * @param mode dispatch mode
+     */
+    void setDispatchMode(@NotNull DispatchMode mode);
+
+    /**
+     * Returns how requests are dispatched to the proxy listeners
+     * @return dispatch mode
+     */
+    @NotNull DispatchMode getDispatchMode();
+
+    /**
+     * Invalidates cached decisions of proxy listeners
+     * (chunk size, full chunking, MITM permission and SNI)
+     * and cached resolution responses,
+     * should be called when listener decisions are changed, e.g. after configuration reload
+     */
+    void invalidateProxyListenerDecisions();
+
+    /**
+     * Invalidates cached decisions of proxy listeners for the host
+     *
+     * @param host host
+     */
+    void invalidateProxyListenerDecisions(@NotNull String host);
+
     /**
      * Registers server listener
      *
@@ -0,0 +1,83 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.sdk.http;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Locale;
+
+/**
+ * HTTP header name with precomputed case-insensitive hash,
+ * the proxy server resolves it to its native header name only once
+ *
+ * Predefined names are available in {@link HttpHeaderNames}
+ */
+public final class HttpHeaderName implements CharSequence {
+
+    private final String name;
+    private final int hash;
+
+    private HttpHeaderName(String name) {
+        this.name = name;
+        this.hash = name.hashCode();
+    }
+
+    /**
+     * Creates header name
+     *
+     * @param name header name
+     * @return header name
+     */
+    public static HttpHeaderName of(@NotNull String name) {
+        if (name.isEmpty()) throw new IllegalArgumentException("Header name is empty");
+        return new HttpHeaderName(name.toLowerCase(Locale.ROOT));
+    }
+
+    @Override
+    public int length() {
+        return name.length();
+    }
+
+    @Override
+    public char charAt(int index) {
+        return name.charAt(index);
+    }
+
+    @Override
+    public @NotNull CharSequence subSequence(int start, int end) {
+        return name.subSequence(start, end);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final HttpHeaderName that = (HttpHeaderName) o;
+        return hash == that.hash && name.equals(that.name);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public @NotNull String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,49 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.sdk.http;
+
+/**
+ * Standard HTTP header names
+ */
+public final class HttpHeaderNames {
+
+    private HttpHeaderNames() {}
+
+    public static final HttpHeaderName ACCEPT = HttpHeaderName.of("accept");
+    public static final HttpHeaderName ACCEPT_ENCODING = HttpHeaderName.of("accept-encoding");
+    public static final HttpHeaderName ACCEPT_LANGUAGE = HttpHeaderName.of("accept-language");
+    public static final HttpHeaderName AUTHORIZATION = HttpHeaderName.of("authorization");
+    public static final HttpHeaderName CACHE_CONTROL = HttpHeaderName.of("cache-control");
+    public static final HttpHeaderName CONNECTION = HttpHeaderName.of("connection");
+    public static final HttpHeaderName CONTENT_ENCODING = HttpHeaderName.of("content-encoding");
+    public static final HttpHeaderName CONTENT_LENGTH = HttpHeaderName.of("content-length");
+    public static final HttpHeaderName CONTENT_SECURITY_POLICY = HttpHeaderName.of("content-security-policy");
+    public static final HttpHeaderName CONTENT_TYPE = HttpHeaderName.of("content-type");
+    public static final HttpHeaderName COOKIE = HttpHeaderName.of("cookie");
+    public static final HttpHeaderName HOST = HttpHeaderName.of("host");
+    public static final HttpHeaderName LOCATION = HttpHeaderName.of("location");
+    public static final HttpHeaderName ORIGIN = HttpHeaderName.of("origin");
+    public static final HttpHeaderName PROXY_AUTHORIZATION = HttpHeaderName.of("proxy-authorization");
+    public static final HttpHeaderName PROXY_CONNECTION = HttpHeaderName.of("proxy-connection");
+    public static final HttpHeaderName REFERER = HttpHeaderName.of("referer");
+    public static final HttpHeaderName SET_COOKIE = HttpHeaderName.of("set-cookie");
+    public static final HttpHeaderName TRANSFER_ENCODING = HttpHeaderName.of("transfer-encoding");
+    public static final HttpHeaderName USER_AGENT = HttpHeaderName.of("user-agent");
+    public static final HttpHeaderName VIA = HttpHeaderName.of("via");
+    public static final HttpHeaderName X_FORWARDED_FOR = HttpHeaderName.of("x-forwarded-for");
+}
@@ -39,4 +39,64 @@ public interface HttpHeaders {
 
     boolean isEmpty();
     int size();
+
+    // region CharSequence names
+    // Use constants from HttpHeaderNames to avoid hashing header names on every call
+
+    default @Nullable String get(@NotNull CharSequence name) {
+        return get(name.toString());
+    }
+
+    default void set(@NotNull CharSequence name, @NotNull CharSequence value) {
+        set(name.toString(), value.toString());
+    }
+
+    default @Nullable Integer getInt(@NotNull CharSequence name) {
+        return getInt(name.toString());
+    }
+
+    default boolean contains(@NotNull CharSequence name) {
+        return contains(name.toString());
+    }
+
+    /**
+     * Returns whether the header has the given value, ignoring case
+     *
+     * @param name header name
+     * @param value header value
+     * @return whether the header has the value
+     */
+    default boolean containsValue(@NotNull CharSequence name, @NotNull CharSequence value) {
+        final String actual = get(name);
+        return actual != null && actual.equalsIgnoreCase(value.toString());
+    }
+
+    default void remove(@NotNull CharSequence name) {
+        remove(name.toString());
+    }
+
+    // endregion
+
+    /**
+     * Visits all headers in their order,
+     * names and values are passed without copying them when possible
+     *
+     * @param visitor header visitor
+     */
+    default void forEach(@NotNull Visitor visitor) {
+        for (String name : names()) {
+            if (!visitor.visit(name, get(name))) return;
+        }
+    }
+
+    interface Visitor {
+        /**
+         * Visits a header
+         *
+         * @param name header name
+         * @param value header value
+         * @return whether to continue visiting
+         */
+        boolean visit(@NotNull CharSequence name, @NotNull CharSequence value);
+    }
 }
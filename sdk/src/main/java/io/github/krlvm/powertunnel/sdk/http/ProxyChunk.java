@@ -0,0 +1,80 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.sdk.http;
+
+import io.github.krlvm.powertunnel.sdk.types.FullAddress;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Chunk of a streamed (not aggregated) request or response body
+ */
+public interface ProxyChunk {
+
+    @Nullable FullAddress address();
+
+    /**
+     * Returns whether this chunk is the last chunk of the body
+     *
+     * @return whether this chunk is the last one
+     */
+    boolean isLast();
+
+    /**
+     * Returns length of the chunk in bytes
+     *
+     * @return chunk length
+     */
+    int length();
+
+    /**
+     * Returns a copy of the chunk content
+     *
+     * @return chunk content
+     */
+    byte[] content();
+
+    /**
+     * Returns read-only view of the chunk content,
+     * content held in several buffers is copied into a single buffer once
+     * The view must not be used after the listener call has returned
+     *
+     * @return read-only content view
+     */
+    @NotNull ByteBuffer contentBuffer();
+
+    /**
+     * Returns view of the chunk content as ISO-8859-1 characters
+     * without copying it, each byte is represented by one char
+     * The view must not be used after the listener call has returned
+     *
+     * @return content characters view
+     */
+    @NotNull CharSequence contentChars();
+
+    /**
+     * Replaces the chunk content
+     * Changing the content length is safe only for messages
+     * with chunked transfer encoding
+     *
+     * @param content new chunk content
+     */
+    void setContent(@NotNull byte[] content);
+}
@@ -21,11 +21,84 @@ import io.github.krlvm.powertunnel.sdk.types.FullAddress;
 import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
 public interface ProxyMessage {
 
     @Nullable FullAddress address();
 
     @NotNull HttpHeaders headers();
 
+    /**
+     * Returns a copy of the message content
+     *
+     * @return message content
+     */
     byte[] content();
+
+    /**
+     * Returns length of the message content in bytes
+     *
+     * @return content length
+     */
+    int contentLength();
+
+    /**
+     * Returns read-only view of the message content,
+     * content held in several buffers is copied into a single buffer once
+     * The view must not be used after the listener call has returned
+     *
+     * @return read-only content view
+     */
+    @NotNull ByteBuffer contentBuffer();
+
+    /**
+     * Returns view of the message content as ISO-8859-1 characters
+     * without copying it, each byte is represented by one char
+     * The view must not be used after the listener call has returned
+     *
+     * @return content characters view
+     */
+    @NotNull CharSequence contentChars();
+
+    /**
+     * Returns index of the first occurrence of the bytes in the message content
+     * starting from the given index
+     *
+     * @param needle bytes to search for
+     * @param fromIndex index to start the search from
+     * @return index of the first occurrence or -1 if there is no such occurrence
+     */
+    int indexOf(@NotNull byte[] needle, int fromIndex);
+
+    /**
+     * Returns index of the first occurrence of the bytes in the message content
+     *
+     * @param needle bytes to search for
+     * @return index of the first occurrence or -1 if there is no such occurrence
+     */
+    default int indexOf(@NotNull byte[] needle) {
+        return indexOf(needle, 0);
+    }
+
+    /**
+     * Returns index of the first occurrence of the ISO-8859-1 string in the message content
+     *
+     * @param needle string to search for
+     * @return index of the first occurrence or -1 if there is no such occurrence
+     */
+    default int indexOf(@NotNull String needle) {
+        return indexOf(needle.getBytes(StandardCharsets.ISO_8859_1), 0);
+    }
+
+    /**
+     * Returns whether the message content contains the ISO-8859-1 string
+     *
+     * @param needle string to search for
+     * @return whether the content contains the string
+     */
+    default boolean contains(@NotNull String needle) {
+        return indexOf(needle) >= 0;
+    }
 }
\ No newline at end of file
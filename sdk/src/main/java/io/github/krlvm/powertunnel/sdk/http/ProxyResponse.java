@@ -19,6 +19,13 @@ package io.github.krlvm.powertunnel.sdk.http;
 
 import org.jetbrains.annotations.NotNull;
 
+/**
+ * HTTP response
+ *
+ * Content encoded with gzip or deflate is decoded when it is accessed for the first time
+ * and the decoded content is shared by all listeners, the content set by a listener is sent
+ * without Content-Encoding
+ */
 public interface ProxyResponse extends ProxyMessage {
 
     int code();
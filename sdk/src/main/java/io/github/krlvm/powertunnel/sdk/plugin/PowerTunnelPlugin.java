@@ -20,6 +20,7 @@ package io.github.krlvm.powertunnel.sdk.plugin;
 import io.github.krlvm.powertunnel.sdk.PowerTunnelServer;
 import io.github.krlvm.powertunnel.sdk.ServerListener;
 import io.github.krlvm.powertunnel.sdk.configuration.Configuration;
+import io.github.krlvm.powertunnel.sdk.proxy.HostFilter;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
 import io.github.krlvm.powertunnel.sdk.proxy.ProxyServer;
 import org.jetbrains.annotations.NotNull;
@@ -85,6 +86,23 @@ public abstract class PowerTunnelPlugin {
         validateServer();
         getServer().registerProxyListener(getInfo(), listener, priority);
     }
+    public void registerProxyListener(@NotNull ProxyListener listener, @NotNull HostFilter hosts) {
+        validateServer();
+        getServer().registerProxyListener(getInfo(), listener, ProxyListener.PRIORITY_NORMAL, hosts);
+    }
+    public void registerProxyListener(@NotNull ProxyListener listener, int priority, @NotNull HostFilter hosts) {
+        validateServer();
+        getServer().registerProxyListener(getInfo(), listener, priority, hosts);
+    }
+
+    public void invalidateProxyListenerDecisions() {
+        validateServer();
+        getServer().invalidateProxyListenerDecisions();
+    }
+    public void invalidateProxyListenerDecisions(@NotNull String host) {
+        validateServer();
+        getServer().invalidateProxyListenerDecisions(host);
+    }
 
     public void registerServerListener(@NotNull ServerListener listener) {
         validateServer();
@@ -0,0 +1,44 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.sdk.proxy;
+
+import io.github.krlvm.powertunnel.sdk.http.ProxyRequest;
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Proxy listener that can handle client requests asynchronously
+ *
+ * While the returned stage is not completed, reading from the client connection is paused
+ * and the proxy thread is free to serve other connections.
+ * Asynchronous hooks are called on a worker thread, not on the proxy thread.
+ */
+public interface AsyncProxyListener extends ProxyListener {
+
+    /**
+     * Called when a request is received from the client,
+     * the request can be modified until the returned stage is completed
+     *
+     * @param request client request
+     * @return stage completed when the request is handled
+     *         or null if the request has been handled synchronously
+     */
+    @Nullable CompletionStage<Void> onClientToProxyRequestAsync(@NotNull ProxyRequest request);
+}
@@ -17,16 +17,22 @@
 
 package io.github.krlvm.powertunnel.sdk.proxy;
 
+import org.jetbrains.annotations.NotNull;
 import org.jetbrains.annotations.Nullable;
 
 import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 public class DNSRequest {
 
     private final String host;
     private final int port;
 
-    private InetSocketAddress response;
+    private List<InetSocketAddress> responses = Collections.emptyList();
+    private long ttlNanos;
 
     public DNSRequest(String host, int port) {
         this.host = host;
@@ -49,7 +55,18 @@ public class DNSRequest {
      * @return response
      */
     public @Nullable InetSocketAddress getResponse() {
-        return response;
+        return responses.isEmpty() ? null : responses.get(0);
+    }
+
+    /**
+     * Returns all addresses of the response,
+     * the proxy server tries to connect to them in parallel and uses the first one that answers
+     * If there's no DNS Resolvers registered, returns an empty list
+     *
+     * @return addresses of the response
+     */
+    public @NotNull List<InetSocketAddress> getResponses() {
+        return responses;
     }
 
     /**
@@ -60,6 +77,55 @@ public class DNSRequest {
      * @param response
      */
     public void setResponse(@Nullable InetSocketAddress response) {
-        this.response = response;
+        setResponses(response == null ? Collections.emptyList() : Collections.singletonList(response));
+    }
+
+    /**
+     * Sets response that can be reused for the same host and port
+     * during the given time, the listeners are not asked again until it expires
+     *
+     * @param response response
+     * @param ttl time to live of the response
+     * @param unit time unit of the time to live
+     */
+    public void setResponse(@NotNull InetSocketAddress response, long ttl, @NotNull TimeUnit unit) {
+        setResponses(Collections.singletonList(response), ttl, unit);
+    }
+
+    /**
+     * Sets all addresses of the response
+     * If the list is empty, the request will be resolved
+     * using default DNS Resolver
+     *
+     * @param responses addresses of the response
+     */
+    public void setResponses(@NotNull List<InetSocketAddress> responses) {
+        this.responses = Collections.unmodifiableList(new ArrayList<>(responses));
+        this.ttlNanos = 0;
+    }
+
+    /**
+     * Sets all addresses of the response that can be reused for the same host and port
+     * during the given time, the listeners are not asked again until it expires
+     *
+     * @param responses addresses of the response
+     * @param ttl time to live of the response
+     * @param unit time unit of the time to live
+     */
+    public void setResponses(@NotNull List<InetSocketAddress> responses, long ttl, @NotNull TimeUnit unit) {
+        if (ttl < 0) throw new IllegalArgumentException("TTL can't be negative");
+        this.responses = Collections.unmodifiableList(new ArrayList<>(responses));
+        this.ttlNanos = unit.toNanos(ttl);
+    }
+
+    /**
+     * Returns time to live of the response,
+     * 0 if the response must not be reused
+     *
+     * @param unit time unit
+     * @return time to live of the response
+     */
+    public long getTtl(@NotNull TimeUnit unit) {
+        return unit.convert(ttlNanos, TimeUnit.NANOSECONDS);
     }
 }
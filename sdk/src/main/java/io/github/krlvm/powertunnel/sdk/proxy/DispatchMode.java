@@ -15,20 +15,19 @@
  * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
  */
 
-package io.github.krlvm.powertunnel.listener;
+package io.github.krlvm.powertunnel.sdk.proxy;
 
-import io.github.krlvm.powertunnel.sdk.proxy.ProxyListener;
-
-public interface ProxyListenerCallback {
-    Object call(ProxyListener listener);
-
-    interface Void extends ProxyListenerCallback {
-        void callVoid(ProxyListener listener);
-
-        @Override
-        default Object call(ProxyListener listener) {
-            callVoid(listener);
-            return null;
-        }
-    }
-}
\ No newline at end of file
+/**
+ * Defines how a request is dispatched to the proxy listeners
+ * once one of them has blocked it or set a response
+ */
+public enum DispatchMode {
+    /**
+     * All listeners are called
+     */
+    FULL,
+    /**
+     * Listeners with lower priority are not called
+     */
+    SHORT_CIRCUIT
+}
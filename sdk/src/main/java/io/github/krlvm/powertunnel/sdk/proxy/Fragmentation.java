@@ -0,0 +1,130 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.sdk.proxy;
+
+import org.jetbrains.annotations.NotNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Fragmentation of the first packet sent to the server,
+ * takes precedence over the chunk size returned by {@link ProxyListener#onGetChunkSize}
+ */
+public final class Fragmentation {
+
+    public enum Strategy {
+        /** Packet is sent in several TCP segments */
+        TCP_SEGMENTS,
+        /**
+         * ClientHello is re-framed into several TLS records sent in one TCP segment,
+         * falls back to TCP segments if the packet is not a ClientHello
+         */
+        TLS_RECORDS,
+        /** ClientHello is re-framed into several TLS records, each one is sent in its own TCP segment */
+        TLS_RECORDS_AND_TCP_SEGMENTS
+    }
+
+    private static final Fragmentation NONE = new Fragmentation(Strategy.TCP_SEGMENTS, new SplitPoint[0], 0);
+
+    private final Strategy strategy;
+    private final List<SplitPoint> splitPoints;
+    private final long delayNanos;
+
+    private Fragmentation(Strategy strategy, SplitPoint[] splitPoints, long delayNanos) {
+        this(strategy, Collections.unmodifiableList(Arrays.asList(splitPoints)), delayNanos);
+    }
+
+    private Fragmentation(Strategy strategy, List<SplitPoint> splitPoints, long delayNanos) {
+        this.strategy = strategy;
+        this.splitPoints = splitPoints;
+        this.delayNanos = delayNanos;
+    }
+
+    /**
+     * Creates fragmentation splitting the packet into TCP segments at the given points
+     *
+     * @param splitPoints split points
+     * @return fragmentation
+     */
+    public static Fragmentation of(@NotNull SplitPoint... splitPoints) {
+        return of(Strategy.TCP_SEGMENTS, splitPoints);
+    }
+
+    /**
+     * Creates fragmentation splitting the packet at the given points
+     *
+     * @param strategy fragmentation strategy
+     * @param splitPoints split points
+     * @return fragmentation
+     */
+    public static Fragmentation of(@NotNull Strategy strategy, @NotNull SplitPoint... splitPoints) {
+        return new Fragmentation(strategy, splitPoints.clone(), 0);
+    }
+
+    /**
+     * Returns fragmentation sending each fragment after the given delay,
+     * the delay does not block any thread
+     *
+     * @param delay delay between fragments
+     * @param unit delay time unit
+     * @return fragmentation with the delay
+     */
+    public Fragmentation withDelay(long delay, @NotNull TimeUnit unit) {
+        if (delay < 0) throw new IllegalArgumentException("Delay can't be negative");
+        return new Fragmentation(strategy, splitPoints, unit.toNanos(delay));
+    }
+
+    /**
+     * Returns fragmentation that sends the packet as is
+     *
+     * @return fragmentation without split points
+     */
+    public static Fragmentation none() {
+        return NONE;
+    }
+
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public List<SplitPoint> getSplitPoints() {
+        return splitPoints;
+    }
+
+    /**
+     * Returns delay between fragments
+     *
+     * @param unit time unit
+     * @return delay between fragments
+     */
+    public long getDelay(@NotNull TimeUnit unit) {
+        return unit.convert(delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return "Fragmentation{" +
+                "strategy=" + strategy +
+                ", splitPoints=" + splitPoints +
+                ", delayNanos=" + delayNanos +
+                '}';
+    }
+}
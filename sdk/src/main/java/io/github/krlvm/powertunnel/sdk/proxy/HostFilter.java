@@ -0,0 +1,159 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.sdk.proxy;
+
+import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Set of hosts a proxy listener is subscribed to
+ *
+ * Supported patterns:
+ *   example.com   - exact host
+ *   .example.com  - domain suffix, matches example.com and all its subdomains
+ *   *.example.com - wildcard, matches all subdomains of example.com, but not example.com itself
+ */
+public class HostFilter {
+
+    private final List<String> exact = new ArrayList<>();
+    private final List<String> suffixes = new ArrayList<>();
+    private final List<String> wildcards = new ArrayList<>();
+
+    private HostFilter() {}
+
+    /**
+     * Creates host filter from the given patterns
+     *
+     * @param patterns host patterns
+     * @return host filter
+     */
+    public static HostFilter of(@NotNull String... patterns) {
+        return of(Arrays.asList(patterns));
+    }
+
+    /**
+     * Creates host filter from the given patterns
+     *
+     * @param patterns host patterns
+     * @return host filter
+     */
+    public static HostFilter of(@NotNull Iterable<String> patterns) {
+        final HostFilter filter = new HostFilter();
+        for (String pattern : patterns) {
+            pattern = normalize(pattern);
+            if (pattern.startsWith("*.")) {
+                filter.wildcards.add(validate(pattern.substring(2), pattern));
+            } else if (pattern.startsWith(".")) {
+                filter.suffixes.add(validate(pattern.substring(1), pattern));
+            } else {
+                filter.exact.add(validate(pattern, pattern));
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Creates host filter matching only the given hosts
+     *
+     * @param hosts hosts
+     * @return host filter
+     */
+    public static HostFilter exact(@NotNull String... hosts) {
+        final HostFilter filter = new HostFilter();
+        for (String host : hosts) filter.exact.add(validate(normalize(host), host));
+        return filter;
+    }
+
+    /**
+     * Creates host filter matching the given domains and all their subdomains
+     *
+     * @param domains domains
+     * @return host filter
+     */
+    public static HostFilter suffix(@NotNull String... domains) {
+        final HostFilter filter = new HostFilter();
+        for (String domain : domains) {
+            final String normalized = normalize(domain);
+            filter.suffixes.add(validate(normalized.startsWith(".") ? normalized.substring(1) : normalized, domain));
+        }
+        return filter;
+    }
+
+    public List<String> getExactHosts() {
+        return Collections.unmodifiableList(exact);
+    }
+
+    public List<String> getSuffixes() {
+        return Collections.unmodifiableList(suffixes);
+    }
+
+    public List<String> getWildcards() {
+        return Collections.unmodifiableList(wildcards);
+    }
+
+    /**
+     * Returns whether the host is matched by this filter
+     *
+     * @param host host
+     * @return whether the host is matched
+     */
+    public boolean matches(@Nullable String host) {
+        if (host == null) return false;
+        host = normalize(host);
+        for (String s : exact) {
+            if (host.equals(s)) return true;
+        }
+        for (String s : suffixes) {
+            if (host.equals(s) || isSubdomain(host, s)) return true;
+        }
+        for (String s : wildcards) {
+            if (isSubdomain(host, s)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isSubdomain(String host, String domain) {
+        return host.length() > domain.length() && host.endsWith(domain)
+                && host.charAt(host.length() - domain.length() - 1) == '.';
+    }
+
+    private static String normalize(String host) {
+        host = host.trim().toLowerCase(Locale.ROOT);
+        return host.endsWith(".") ? host.substring(0, host.length() - 1) : host;
+    }
+
+    private static String validate(String host, String pattern) {
+        if (host.isEmpty() || host.contains("*")) throw new IllegalArgumentException("Invalid host pattern: '" + pattern + "'");
+        return host;
+    }
+
+    @Override
+    public String toString() {
+        return "HostFilter{" +
+                "exact=" + exact +
+                ", suffixes=" + suffixes +
+                ", wildcards=" + wildcards +
+                '}';
+    }
+}
@@ -17,6 +17,7 @@
 
 package io.github.krlvm.powertunnel.sdk.proxy;
 
+import io.github.krlvm.powertunnel.sdk.http.ProxyChunk;
 import io.github.krlvm.powertunnel.sdk.http.ProxyRequest;
 import io.github.krlvm.powertunnel.sdk.http.ProxyResponse;
 import io.github.krlvm.powertunnel.sdk.types.FullAddress;
@@ -36,6 +37,12 @@ public abstract class ProxyAdapter implements ProxyListener {
     @Override
     public void onProxyToClientResponse(@NotNull ProxyResponse response) {}
 
+    @Override
+    public void onRequestChunk(@NotNull ProxyChunk chunk) {}
+
+    @Override
+    public void onResponseChunk(@NotNull ProxyChunk chunk) {}
+
     @Override
     public Boolean onResolutionRequest(@NotNull DNSRequest request) {
         return null;
@@ -51,6 +58,11 @@ public abstract class ProxyAdapter implements ProxyListener {
         return null;
     }
 
+    @Override
+    public Fragmentation onGetFragmentation(@NotNull FullAddress address) {
+        return null;
+    }
+
     @Override
     public Boolean isMITMAllowed(@NotNull FullAddress address) {
         return null;
@@ -17,10 +17,12 @@
 
 package io.github.krlvm.powertunnel.sdk.proxy;
 
+import io.github.krlvm.powertunnel.sdk.http.ProxyChunk;
 import io.github.krlvm.powertunnel.sdk.http.ProxyRequest;
 import io.github.krlvm.powertunnel.sdk.http.ProxyResponse;
 import io.github.krlvm.powertunnel.sdk.types.FullAddress;
 import org.jetbrains.annotations.NotNull;
+import org.jetbrains.annotations.Nullable;
 
 public interface ProxyListener {
 
@@ -30,14 +32,51 @@ public interface ProxyListener {
     void onServerToProxyResponse(@NotNull ProxyResponse response);
     void onProxyToClientResponse(@NotNull ProxyResponse response);
 
+    /**
+     * Called for each chunk of a streamed (not aggregated) request body,
+     * the chunk can be modified before it is sent to the server
+     *
+     * @param chunk request body chunk
+     */
+    default void onRequestChunk(@NotNull ProxyChunk chunk) {}
+
+    /**
+     * Called for each chunk of a streamed (not aggregated) response body,
+     * the chunk can be modified before it is sent to the client
+     *
+     * @param chunk response body chunk
+     */
+    default void onResponseChunk(@NotNull ProxyChunk chunk) {}
+
     Boolean onResolutionRequest(@NotNull DNSRequest request);
 
     Integer onGetChunkSize(@NotNull FullAddress address);
     Boolean isFullChunking(@NotNull FullAddress address);
 
+    /**
+     * Returns how the first packet sent to the server is fragmented,
+     * null to fall back to the chunk size
+     *
+     * @param address server address
+     * @return fragmentation
+     */
+    default @Nullable Fragmentation onGetFragmentation(@NotNull FullAddress address) {
+        return null;
+    }
+
     Boolean isMITMAllowed(@NotNull FullAddress address);
     Object onGetSNI(@NotNull String hostname);
 
+    /**
+     * Returns how the request chain is dispatched after this listener
+     * blocks a request or sets a response, null to use the server dispatch mode
+     *
+     * @return dispatch mode
+     */
+    default @Nullable DispatchMode getDispatchMode() {
+        return null;
+    }
+
     int PRIORITY_HIGH   = -5;
     int PRIORITY_NORMAL =  0;
     int PRIORITY_LOW    =  5;
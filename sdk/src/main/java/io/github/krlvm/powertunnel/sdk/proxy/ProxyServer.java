@@ -250,6 +250,19 @@ public interface ProxyServer {
      */
     boolean isFullResponse();
 
+    /**
+     * Forces proxy server to collect all chunks of responses
+     * from the given hosts with one of the given content types,
+     * other responses are streamed unless {@link #setFullResponse(boolean)} is enabled
+     *
+     * Content types are compared ignoring parameters,
+     * a type with "*" subtype (e.g. "text/*") matches all its subtypes
+     *
+     * @param hosts hosts to collect responses from or null to match all hosts
+     * @param contentTypes content types to collect or none to match all content types
+     */
+    void addFullResponseRule(@Nullable HostFilter hosts, @NotNull String... contentTypes);
+
     // endregion
 
     // region Allow Requests To Origin Server
@@ -284,6 +297,26 @@ public interface ProxyServer {
 
     // endregion
 
+    // region Adaptive Fragmentation
+
+    /**
+     * Sets whether the first packet sent to hosts for which no listener
+     * returns fragmentation or chunk size is fragmented adaptively:
+     * the proxy server learns the cheapest fragmentation the host answers to
+     * and remembers it between launches
+     *
+     * @param enabled whether adaptive fragmentation is enabled
+     */
+    void setAdaptiveFragmentation(boolean enabled);
+
+    /**
+     * Returns whether adaptive fragmentation is enabled
+     * @return whether adaptive fragmentation is enabled
+     */
+    boolean isAdaptiveFragmentation();
+
+    // endregion
+
     // region DNS Configuration
 
     /**
@@ -298,6 +331,21 @@ public interface ProxyServer {
      */
     @Nullable String getDNSDomainsSearchPath();
 
+    /**
+     * Sets encrypted DNS server hosts are resolved with when no listener resolves them,
+     * DNS over TLS (tls://host[:port]) and DNS over HTTPS (https://host[:port]/path) are supported
+     *
+     * @param uri server URI or null to use plain DNS
+     * @throws IllegalArgumentException if the URI is not supported
+     */
+    void setEncryptedDNSServer(@Nullable String uri);
+
+    /**
+     * Returns encrypted DNS server URI
+     * @return encrypted DNS server URI or null if plain DNS is used
+     */
+    @Nullable String getEncryptedDNSServer();
+
     // region Hostnames Availability
 
     /**
@@ -0,0 +1,165 @@
+/*
+ * This file is part of PowerTunnel.
+ *
+ * PowerTunnel is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * PowerTunnel is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with PowerTunnel.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package io.github.krlvm.powertunnel.sdk.proxy;
+
+/**
+ * Point the first packet sent to the server is split at,
+ * for plain HTTP connections the head of each request is split
+ *
+ * Points anchored to the TLS ClientHello or to the HTTP request head
+ * are ignored when the packet does not contain the anchor
+ */
+public final class SplitPoint {
+
+    public enum Kind {
+        /** Fixed offset from the start of the packet */
+        OFFSET,
+        /** Before the extensions block of the ClientHello */
+        BEFORE_EXTENSIONS,
+        /** Offset inside the SNI hostname, negative offsets are counted from the end of the hostname */
+        SNI_OFFSET,
+        /** Middle of the SNI hostname */
+        SNI_MIDDLE,
+        /** Every N bytes of the SNI hostname */
+        SNI_EVERY,
+        /** After the method of the HTTP request */
+        AFTER_METHOD,
+        /** Before the Host header of the HTTP request */
+        BEFORE_HOST_HEADER,
+        /** Offset inside the Host header value, negative offsets are counted from the end of the value */
+        HOST_OFFSET,
+        /** Middle of the Host header value */
+        HOST_MIDDLE
+    }
+
+    private final Kind kind;
+    private final int value;
+
+    private SplitPoint(Kind kind, int value) {
+        this.kind = kind;
+        this.value = value;
+    }
+
+    /**
+     * Creates split point at a fixed offset from the start of the packet
+     *
+     * @param offset offset in bytes
+     * @return split point
+     */
+    public static SplitPoint at(int offset) {
+        if (offset <= 0) throw new IllegalArgumentException("Offset must be positive");
+        return new SplitPoint(Kind.OFFSET, offset);
+    }
+
+    /**
+     * Creates split point before the extensions block of the ClientHello
+     *
+     * @return split point
+     */
+    public static SplitPoint beforeExtensions() {
+        return new SplitPoint(Kind.BEFORE_EXTENSIONS, 0);
+    }
+
+    /**
+     * Creates split point inside the SNI hostname
+     *
+     * @param offset offset from the start of the hostname, or from its end if negative
+     * @return split point
+     */
+    public static SplitPoint sni(int offset) {
+        return new SplitPoint(Kind.SNI_OFFSET, offset);
+    }
+
+    /**
+     * Creates split point in the middle of the SNI hostname
+     *
+     * @return split point
+     */
+    public static SplitPoint sniMiddle() {
+        return new SplitPoint(Kind.SNI_MIDDLE, 0);
+    }
+
+    /**
+     * Creates split points every N bytes of the SNI hostname
+     *
+     * @param bytes distance between the split points
+     * @return split point
+     */
+    public static SplitPoint sniEvery(int bytes) {
+        if (bytes <= 0) throw new IllegalArgumentException("Distance must be positive");
+        return new SplitPoint(Kind.SNI_EVERY, bytes);
+    }
+
+    /**
+     * Creates split point after the method of the HTTP request
+     *
+     * @return split point
+     */
+    public static SplitPoint afterMethod() {
+        return new SplitPoint(Kind.AFTER_METHOD, 0);
+    }
+
+    /**
+     * Creates split point before the Host header of the HTTP request
+     *
+     * @return split point
+     */
+    public static SplitPoint beforeHostHeader() {
+        return new SplitPoint(Kind.BEFORE_HOST_HEADER, 0);
+    }
+
+    /**
+     * Creates split point inside the Host header value of the HTTP request
+     *
+     * @param offset offset from the start of the value, or from its end if negative
+     * @return split point
+     */
+    public static SplitPoint host(int offset) {
+        return new SplitPoint(Kind.HOST_OFFSET, offset);
+    }
+
+    /**
+     * Creates split point in the middle of the Host header value of the HTTP request
+     *
+     * @return split point
+     */
+    public static SplitPoint hostMiddle() {
+        return new SplitPoint(Kind.HOST_MIDDLE, 0);
+    }
+
+    public Kind getKind() {
+        return kind;
+    }
+
+    public int getValue() {
+        return value;
+    }
+
+    @Override
+    public String toString() {
+        switch (kind) {
+            case OFFSET:
+            case SNI_OFFSET:
+            case SNI_EVERY:
+            case HOST_OFFSET:
+                return kind.name() + "(" + value + ")";
+            default:
+                return kind.name();
+        }
+    }
+}
@@ -46,6 +46,19 @@ public class FullAddress implements Cloneable {
         return new InetSocketAddress(InetAddress.getByName(this.host), this.port);
     }
 
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (o == null || getClass() != o.getClass()) return false;
+        final FullAddress that = (FullAddress) o;
+        return port == that.port && host.equals(that.host);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * host.hashCode() + port;
+    }
+
     @Override
     public String toString() {
         return host + ":" + port;